@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.Random;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Generates random levels for the benchmarks. The levels are surrounded by walls and have the
+ * viewer in the middle.
+ */
+public class LevelGenerator {
+
+    /**
+     * Generates a level matrix.
+     * @param width of the level.
+     * @param height of the level.
+     * @param wallDensity the probability of a square being a wall, between 0 and 1.
+     * @param wallTextures number of different walls.
+     * @param seed for the random number generator, so the same level can be generated again.
+     * @return the levelMatrix used by a World object.
+     */
+    public static char[][] generate(int width, int height, double wallDensity, int wallTextures, long seed) {
+        Random random = new Random(seed);
+        char[][] levelMatrix = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean border = (x == 0 || y == 0 || x == width - 1 || y == height - 1);
+                if (border || random.nextDouble() < wallDensity) {
+                    levelMatrix[y][x] = (char) ('1' + random.nextInt(Math.max(wallTextures, 1)));
+                } else {
+                    levelMatrix[y][x] = '0';
+                }
+            }
+        }
+        levelMatrix[height / 2][width / 2] = 'v';
+        return levelMatrix;
+    }
+}
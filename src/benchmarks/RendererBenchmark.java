@@ -0,0 +1,229 @@
+package benchmarks;
+
+import controllers.FileController;
+import controllers.PhysicsController;
+import controllers.SettingsController;
+import environment.Entity;
+import environment.EntityFactory;
+import environment.Settings;
+import environment.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import renderer.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * JMH benchmarks for the RendererComponents and for whole frames. The level is either a level
+ * file or a generated square level given as "size:wall density", or only the size for the
+ * default density.
+ * <p>
+ * The frame benchmarks turn the viewer, so RayCache casts only the columns turned into view.
+ * The FullCast ones move the viewer back and forth by a unit instead, so every column is cast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+    private static final double TURN_PER_FRAME = 0.01; // Turn a little to average over directions.
+    private static final double DEFAULT_WALL_DENSITY = 0.05;
+
+    @Param({"500x400", "1920x1080"})
+    public String resolution;
+
+    @Param({"60", "90"})
+    public int fov;
+
+    // The wall density is in the level, as it means nothing for level files.
+    @Param({"levels/1.lvl", "256:0.05", "256:0.3", "2048:0.05", "2048:0.3"})
+    public String level;
+
+    @Param({"1"})
+    public int rayCaster;
+
+    @Param({"1"})
+    public int renderThreads;
+
+    private RendererCommon java2DCommon;
+    private RendererCommon softwareCommon;
+    private Renderer java2DRenderer;
+    private Renderer softwareRenderer;
+    private Entity viewer;
+    private RendererComponent classicRayCaster;
+    private RendererComponent ddaRayCaster;
+    private RendererComponent wallStripCreator;
+    private RendererComponent shader;
+    private RendererComponent wallDrawer;
+    private RendererComponent floorDrawer;
+    private RendererComponent ceilingDrawer;
+    private RendererComponent framebufferDrawer;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] widthAndHeight = resolution.split("x");
+        Settings settings = new Settings();
+        for (String key : SettingsController.getInstance().getCurrentSettings()) {
+            settings.put(key, SettingsController.getInstance().getCurrentSettings().get(key));
+        }
+        settings.put("RESOLUTION_X", Integer.parseInt(widthAndHeight[0]));
+        settings.put("RESOLUTION_Y", Integer.parseInt(widthAndHeight[1]));
+        settings.put("FOV", fov);
+        settings.put("RAY_CASTER", rayCaster);
+        settings.put("RENDER_THREADS", renderThreads);
+        settings.put("SOFTWARE_RENDERER", 0);
+        SettingsController.getInstance().updateSettings(settings);
+
+        char[][] levelMatrix;
+        if (level.endsWith(".lvl")) {
+            levelMatrix = FileController.loadWorld(level);
+        } else {
+            String[] sizeAndDensity = level.split(":");
+            int size = Integer.parseInt(sizeAndDensity[0]);
+            double wallDensity = (sizeAndDensity.length > 1) ? Double.parseDouble(sizeAndDensity[1])
+                    : DEFAULT_WALL_DENSITY;
+            levelMatrix = LevelGenerator.generate(size, size, wallDensity, settings.get("WALL_TEXTURES"), 42);
+        }
+        World world = new World(levelMatrix);
+        EntityFactory entityFactory = new EntityFactory(world, new PhysicsController(world));
+        viewer = entityFactory.getViewer();
+
+        java2DRenderer = new Renderer(world);
+        java2DCommon = createCommon(world, settings);
+        classicRayCaster = new RayCaster();
+        ddaRayCaster = new DDARayCaster();
+        wallStripCreator = new WallStripCreator(java2DCommon);
+        shader = new Shader();
+        wallDrawer = new WallDrawer();
+        floorDrawer = new FloorDrawer(java2DCommon);
+        ceilingDrawer = new CeilingDrawer(java2DCommon);
+
+        // Keep the Java2D renderer from switching to the software renderer.
+        SettingsController.getInstance().clearSettingsListeners();
+        settings.put("SOFTWARE_RENDERER", 1);
+        SettingsController.getInstance().updateSettings(settings);
+        softwareRenderer = new Renderer(world);
+        softwareCommon = createCommon(world, settings);
+        framebufferDrawer = new FramebufferDrawer();
+        // Fill the ray casting results used by the later stages.
+        ddaRayCaster.update(java2DCommon);
+        shader.update(java2DCommon);
+        ddaRayCaster.update(softwareCommon);
+        shader.update(softwareCommon);
+    }
+
+    private RendererCommon createCommon(World world, Settings settings) {
+        RendererCommon common = new RendererCommon();
+        common.world = world;
+        common.updateSettings(settings);
+        BufferedImage buffer = new BufferedImage(common.RESOLUTION_X, common.RESOLUTION_Y,
+                common.SOFTWARE_RENDERER ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        common.bufferG2D = buffer.createGraphics();
+        common.pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+        common.setViewer(viewer.x, viewer.y, viewer.direction, viewer.height);
+        return common;
+    }
+
+    private void turn(RendererCommon common) {
+        common.setViewer(viewer.x, viewer.y, common.viewerDirection + TURN_PER_FRAME, viewer.height);
+    }
+
+    /**
+     * Moves the viewer to the other of two positions a unit apart, so no rays can be reused.
+     */
+    private void move(RendererCommon common) {
+        int x = (common.viewerX == viewer.x) ? viewer.x + 1 : viewer.x;
+        common.setViewer(x, viewer.y, common.viewerDirection, viewer.height);
+    }
+
+    @Benchmark
+    public int[] rayCaster() {
+        turn(java2DCommon);
+        classicRayCaster.update(java2DCommon);
+        return java2DCommon.distancesToWalls;
+    }
+
+    @Benchmark
+    public int[] ddaRayCaster() {
+        turn(java2DCommon);
+        ddaRayCaster.update(java2DCommon);
+        return java2DCommon.distancesToWalls;
+    }
+
+    @Benchmark
+    public void wallStripCreator() {
+        wallStripCreator.update(java2DCommon);
+    }
+
+    @Benchmark
+    public void shader() {
+        shader.update(java2DCommon);
+    }
+
+    @Benchmark
+    public void wallDrawer() {
+        wallDrawer.update(java2DCommon);
+    }
+
+    @Benchmark
+    public void floorDrawer() {
+        floorDrawer.update(java2DCommon);
+    }
+
+    @Benchmark
+    public void ceilingDrawer() {
+        ceilingDrawer.update(java2DCommon);
+    }
+
+    @Benchmark
+    public int[] framebufferDrawer() {
+        framebufferDrawer.update(softwareCommon);
+        return softwareCommon.pixels;
+    }
+
+    @Benchmark
+    public void java2DFrame(Blackhole blackhole) {
+        turn(java2DCommon);
+        blackhole.consume(java2DRenderer.render(viewer.x, viewer.y, java2DCommon.viewerDirection, viewer.height));
+    }
+
+    @Benchmark
+    public void softwareFrame(Blackhole blackhole) {
+        turn(softwareCommon);
+        blackhole.consume(softwareRenderer.render(viewer.x, viewer.y, softwareCommon.viewerDirection,
+                viewer.height));
+    }
+
+    @Benchmark
+    public void java2DFrameFullCast(Blackhole blackhole) {
+        move(java2DCommon);
+        blackhole.consume(java2DRenderer.render(java2DCommon.viewerX, viewer.y, java2DCommon.viewerDirection,
+                viewer.height));
+    }
+
+    @Benchmark
+    public void softwareFrameFullCast(Blackhole blackhole) {
+        move(softwareCommon);
+        blackhole.consume(softwareRenderer.render(softwareCommon.viewerX, viewer.y, softwareCommon.viewerDirection,
+                viewer.height));
+    }
+
+    @TearDown
+    public void tearDown() {
+        // Both commons share the pool of the RenderAssets.
+        ForkJoinPool renderPool = RenderAssets.getInstance().getRenderPool();
+        if (renderPool != null) {
+            renderPool.shutdown();
+        }
+    }
+}
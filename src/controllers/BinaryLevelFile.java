@@ -0,0 +1,330 @@
+package controllers;
+
+import environment.World;
+import exceptions.CorruptLevelFileException;
+import exceptions.ViewerNotFoundException;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * The binary level format, loaded by mapping the file into memory. Integers are big-endian.
+ * <pre>
+ * int     magic "RCLV"
+ * short   version
+ * short   flags, RLE_CELLS or PACKED_CELLS
+ * int     width
+ * int     height
+ * int     grid size the level was made with
+ * byte    number of cell chars, then the chars. The first one is always '0'.
+ * int     number of entities, then for each int x, int y and byte char.
+ * int     length of the cell block in bytes, then the cell block.
+ * </pre>
+ * The cell block has the index of each cell's char in the cell chars, row by row. The cells
+ * of the entities are empty floor there. With PACKED_CELLS two cells are in a byte, the first
+ * in the high four bits. With RLE_CELLS the block has runs of the same cell, each an index
+ * followed by the length of the run in seven bit groups, lowest first, the high bit set when
+ * more follow. The smaller of the two is saved.
+ * <p>
+ * Running this class converts levels between the text and the binary format:
+ * <pre>
+ * java controllers.BinaryLevelFile levels/1.lvl levels/1.rcl
+ * </pre>
+ */
+public class BinaryLevelFile {
+    public static final int MAGIC = 0x52434C56; // "RCLV"
+    public static final int VERSION = 1;
+    public static final int RLE_CELLS = 1;
+    public static final int PACKED_CELLS = 2;
+
+    /**
+     * Checks from the first bytes of a file if it's in the binary format.
+     * @param file the level file.
+     * @return true if the file starts with the magic number.
+     */
+    public static boolean isBinary(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads a level in the binary format.
+     * @param file the level file.
+     * @return the World.
+     * @throws CorruptLevelFileException if the file can't be read or isn't a valid level.
+     */
+    public static World load(File file) throws CorruptLevelFileException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new CorruptLevelFileException("Level file is too large.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level file couldn't be read: " + e.getMessage());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new CorruptLevelFileException("Not a binary level file.");
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new CorruptLevelFileException("Unsupported level file version " + version + ".");
+            }
+            int flags = buffer.getShort();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            buffer.getInt(); // The grid size. Positions are in cells, so the current one is used.
+            if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE - 8) {
+                throw new CorruptLevelFileException("Corrupt width and height in level file.");
+            }
+            byte[] cellChars = new byte[buffer.get() & 0xFF];
+            buffer.get(cellChars);
+            if (cellChars.length == 0 || cellChars[0] != '0') {
+                throw new CorruptLevelFileException("Corrupt cell chars in level file.");
+            }
+            byte[] levelCells = new byte[width * height];
+            int entities = buffer.getInt();
+            if (entities < 0 || entities > levelCells.length) {
+                throw new CorruptLevelFileException("Corrupt number of entities in level file.");
+            }
+            int entitiesPosition = buffer.position();
+            buffer.position(entitiesPosition + entities * 9);
+            int cellBlockLength = buffer.getInt();
+            ByteBuffer cellBlock = buffer.slice();
+            cellBlock.limit(cellBlockLength);
+            if ((flags & RLE_CELLS) != 0) {
+                readRuns(cellBlock, cellChars, levelCells);
+            } else {
+                readPacked(cellBlock, cellChars, levelCells, (flags & PACKED_CELLS) != 0);
+            }
+            // The entities are placed after the cells they're in.
+            buffer.position(entitiesPosition);
+            for (int i = 0; i < entities; i++) {
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                byte c = buffer.get();
+                if (x < 0 || y < 0 || x >= width || y >= height) {
+                    throw new CorruptLevelFileException("Entity " + i + " is outside the level.");
+                }
+                levelCells[y * width + x] = c;
+            }
+            return new World(width, height, levelCells);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new CorruptLevelFileException("Level file ended early or is corrupt.");
+        }
+    }
+
+    /**
+     * Saves a World in the binary format.
+     * @param world the level to be saved.
+     * @param file where to save it.
+     * @throws IOException if the file can't be written.
+     */
+    public static void save(World world, File file) throws IOException {
+        int width = world.getWidth();
+        int height = world.getHeight();
+        if ((long) width * height > Integer.MAX_VALUE - 8) {
+            throw new IOException("Level is too large for the binary format.");
+        }
+        char[] row = new char[width];
+        // The chars of the level and the entities.
+        byte[] cellIndexes = new byte[256];
+        byte[] cellChars = new byte[256];
+        int cellCharCount = 1;
+        cellChars[0] = '0';
+        ByteArrayOutputStream entityTable = new ByteArrayOutputStream();
+        DataOutputStream entityOut = new DataOutputStream(entityTable);
+        int entities = 0;
+        long runsLength = 0;
+        int previousIndex = -1;
+        long runLength = 0;
+        for (int y = 0; y < height; y++) {
+            world.copyRow(y, row);
+            for (int x = 0; x < width; x++) {
+                char c = row[x];
+                int index;
+                if (Character.isLetter(c)) {
+                    entityOut.writeInt(x);
+                    entityOut.writeInt(y);
+                    entityOut.writeByte(c);
+                    entities++;
+                    index = 0;
+                } else {
+                    if (c != '0' && cellIndexes[c & 0xFF] == 0) {
+                        cellIndexes[c & 0xFF] = (byte) cellCharCount;
+                        cellChars[cellCharCount++] = (byte) c;
+                    }
+                    index = cellIndexes[c & 0xFF] & 0xFF;
+                }
+                if (index == previousIndex) {
+                    runLength++;
+                } else {
+                    runsLength += runSize(runLength);
+                    previousIndex = index;
+                    runLength = 1;
+                }
+            }
+        }
+        runsLength += runSize(runLength);
+        boolean packed = cellCharCount <= 16;
+        long cellCount = (long) width * height;
+        long packedLength = packed ? (cellCount + 1) / 2 : cellCount;
+        boolean runs = runsLength < packedLength;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(runs ? RLE_CELLS : (packed ? PACKED_CELLS : 0));
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(World.GRID_SIZE);
+            out.writeByte(cellCharCount);
+            out.write(cellChars, 0, cellCharCount);
+            out.writeInt(entities);
+            entityTable.writeTo(out);
+            out.writeInt((int) (runs ? runsLength : packedLength));
+            previousIndex = -1;
+            runLength = 0;
+            int half = -1; // A packed cell waiting for the next one.
+            for (int y = 0; y < height; y++) {
+                world.copyRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    char c = row[x];
+                    int index = Character.isLetter(c) ? 0 : cellIndexes[c & 0xFF] & 0xFF;
+                    if (runs) {
+                        if (index == previousIndex) {
+                            runLength++;
+                        } else {
+                            writeRun(out, previousIndex, runLength);
+                            previousIndex = index;
+                            runLength = 1;
+                        }
+                    } else if (!packed) {
+                        out.writeByte(index);
+                    } else if (half == -1) {
+                        half = index;
+                    } else {
+                        out.writeByte(half << 4 | index);
+                        half = -1;
+                    }
+                }
+            }
+            if (runs) {
+                writeRun(out, previousIndex, runLength);
+            } else if (half != -1) {
+                out.writeByte(half << 4);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Converts a level file from the text format to the binary format or the other way round.
+     * @param args the level file and the converted file.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java controllers.BinaryLevelFile <level file> <converted file>");
+            System.exit(1);
+        }
+        File from = new File(args[0]);
+        File to = new File(args[1]);
+        try {
+            World world = FileController.openWorld(args[0]);
+            if (isBinary(from)) {
+                FileController.saveWorld(world, to);
+            } else {
+                save(world, to);
+            }
+        } catch (CorruptLevelFileException | ViewerNotFoundException | IOException e) {
+            System.out.println("Level couldn't be converted: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void readPacked(ByteBuffer cellBlock, byte[] cellChars, byte[] levelCells, boolean packed)
+            throws CorruptLevelFileException {
+        int cell = 0;
+        while (cell < levelCells.length) {
+            int value = cellBlock.get() & 0xFF;
+            if (packed) {
+                levelCells[cell++] = cellChar(cellChars, value >>> 4);
+                if (cell < levelCells.length) {
+                    levelCells[cell++] = cellChar(cellChars, value & 0xF);
+                }
+            } else {
+                levelCells[cell++] = cellChar(cellChars, value);
+            }
+        }
+    }
+
+    private static void readRuns(ByteBuffer cellBlock, byte[] cellChars, byte[] levelCells)
+            throws CorruptLevelFileException {
+        int cell = 0;
+        while (cell < levelCells.length) {
+            byte c = cellChar(cellChars, cellBlock.get() & 0xFF);
+            long runLength = 0;
+            int shift = 0;
+            int group;
+            do {
+                group = cellBlock.get();
+                runLength |= (long) (group & 0x7F) << shift;
+                shift += 7;
+            } while (group < 0 && shift < 64);
+            if (runLength < 1 || runLength > levelCells.length - cell) {
+                throw new CorruptLevelFileException("Corrupt cell run at cell " + cell + ".");
+            }
+            Arrays.fill(levelCells, cell, cell + (int) runLength, c);
+            cell += (int) runLength;
+        }
+    }
+
+    private static byte cellChar(byte[] cellChars, int index) throws CorruptLevelFileException {
+        if (index >= cellChars.length) {
+            throw new CorruptLevelFileException("Corrupt cell index " + index + ".");
+        }
+        return cellChars[index];
+    }
+
+    /**
+     * @return the bytes taken by a run of the given length, 0 for no run.
+     */
+    private static int runSize(long runLength) {
+        if (runLength == 0) {
+            return 0;
+        }
+        int size = 2;
+        while (runLength >= 0x80) {
+            runLength >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeRun(DataOutputStream out, int index, long runLength) throws IOException {
+        if (runLength == 0) {
+            return;
+        }
+        out.writeByte(index);
+        while (runLength >= 0x80) {
+            out.writeByte((int) (runLength & 0x7F) | 0x80);
+            runLength >>>= 7;
+        }
+        out.writeByte((int) runLength);
+    }
+}
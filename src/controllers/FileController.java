@@ -1,15 +1,20 @@
 package controllers;
 
+import environment.LevelTiles;
+import environment.PotentiallyVisibleSet;
 import environment.Settings;
 import environment.World;
 import exceptions.CorruptLevelFileException;
 import exceptions.CorruptSettingsException;
+import exceptions.ViewerNotFoundException;
+import profiler.FrameProfiler;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /*
  * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
@@ -20,6 +25,8 @@ import java.util.ArrayList;
  * Handles the file I/O of settings-, level- and imagefiles.
  */
 public class FileController {
+    private static final long LARGE_LEVEL_CELLS = 1 << 24; // Larger levels are read tile by tile.
+    private static final long PARALLEL_PARSE_BYTES = 1 << 22; // Larger level files are parsed in parallel.
 
     /**
      * Open a level-file with a JFileChooser-dialog.
@@ -38,6 +45,23 @@ public class FileController {
         return null;
     }
 
+    /**
+     * Open a level-file as a World with a JFileChooser-dialog.
+     *
+     * @param mainWindow The parent of the dialog.
+     * @return the World as given by openWorld or null if no world was chosen.
+     * @throws CorruptLevelFileException
+     * @throws ViewerNotFoundException
+     */
+    public static World openWorld(JFrame mainWindow) throws CorruptLevelFileException, ViewerNotFoundException {
+        JFileChooser chooser = new JFileChooser("levels/");
+        int returnVal = chooser.showOpenDialog(mainWindow);
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            return openWorld(chooser.getSelectedFile().getAbsolutePath());
+        }
+        return null;
+    }
+
     /**
      * Open a level-file with file name.
      *
@@ -46,45 +70,124 @@ public class FileController {
      * @throws CorruptLevelFileException
      */
     public static char[][] loadWorld(String fileName) throws CorruptLevelFileException {
-        try {
-            FileReader reader = new FileReader(fileName);
-            return loadWorld(reader);
-        } catch (FileNotFoundException e) {
+        return LevelParser.parse(new File(fileName), false).getLevelMatrix();
+    }
+
+    /**
+     * Opens a level-file as a World, in the text or the binary format. A text level with more
+     * than LARGE_LEVEL_CELLS cells is not read into memory, but tile by tile when needed,
+     * keeping at most LEVEL_TILE_CACHE tiles.
+     * <p>
+     * The PotentiallyVisibleSet of the level is read from its visibility file. If there's none
+     * or it's for different walls, and BUILD_PVS is set, it's computed in the background.
+     *
+     * @param fileName The file name.
+     * @return the World.
+     * @throws CorruptLevelFileException
+     * @throws ViewerNotFoundException
+     */
+    public static World openWorld(String fileName) throws CorruptLevelFileException, ViewerNotFoundException {
+        World world = openWorld(fileName, false);
+        if (!world.isTiled()) {
+            openVisibility(world, getVisibilityFile(new File(fileName)));
+        }
+        return world;
+    }
+
+    /**
+     * As openWorld, but the visibility file can be left alone.
+     *
+     * @param fileName The file name.
+     * @param visibility if false, no PotentiallyVisibleSet is read or computed.
+     * @return the World.
+     * @throws CorruptLevelFileException
+     * @throws ViewerNotFoundException
+     */
+    public static World openWorld(String fileName, boolean visibility)
+            throws CorruptLevelFileException, ViewerNotFoundException {
+        if (visibility) {
+            return openWorld(fileName);
+        }
+        File file = new File(fileName);
+        if (BinaryLevelFile.isBinary(file)) {
+            return BinaryLevelFile.load(file);
+        }
+        if (!file.exists()) {
             throw new CorruptLevelFileException("File not found:" + fileName);
         }
+        boolean parallel = file.length() > PARALLEL_PARSE_BYTES && Runtime.getRuntime().availableProcessors() > 1;
+        LevelParser header = LevelParser.readHeader(file);
+        if ((long) header.getWidth() * header.getHeight() > LARGE_LEVEL_CELLS) {
+            // The tiles are read unchecked, so the whole file is checked first.
+            LevelParser.validate(file, parallel);
+            int maxTiles = SettingsController.getInstance().getCurrentSettings().get("LEVEL_TILE_CACHE");
+            return new World(new LevelTiles(file, maxTiles));
+        }
+        LevelParser level = LevelParser.parse(file, parallel);
+        return new World(level.getWidth(), level.getHeight(), level.getCells());
     }
 
-    public static char[][] loadWorld(Reader reader) throws CorruptLevelFileException {
+    /**
+     * Gives the visibility file of a level, next to it with the extension .pvs.
+     *
+     * @param levelFile the level file.
+     * @return the visibility file.
+     */
+    public static File getVisibilityFile(File levelFile) {
+        String name = levelFile.getName();
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return new File(levelFile.getAbsoluteFile().getParentFile(), name + ".pvs");
+    }
+
+    /**
+     * Saves a PotentiallyVisibleSet, replacing the file only when it's complete.
+     *
+     * @param visibleSet the set to be saved.
+     * @param file the visibility file.
+     * @throws IOException if the file can't be written.
+     */
+    public static void saveVisibility(PotentiallyVisibleSet visibleSet, File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
         try {
-            String currentLine;
-            BufferedReader lineReader = new BufferedReader(reader);
-            currentLine = lineReader.readLine();
-            String[] widthAndHeight = currentLine.split(" ");
-            if (widthAndHeight.length != 2) {
-                throw new CorruptLevelFileException("Corrupt width and height in level file.");
-            }
-            int width = Integer.parseInt(widthAndHeight[0]);
-            int height = Integer.parseInt(widthAndHeight[1]);
-            ArrayList<char[]> levelList = new ArrayList<char[]>(height);
-            for (int i = 0; i < height; i++) {
-                currentLine = lineReader.readLine();
-                if (currentLine == null) {
-                    throw new CorruptLevelFileException("Incorrect height in header");
-                } else if (currentLine.length() != width) {
-                    throw new CorruptLevelFileException("Line number " + i + " has incorrect width.");
+            visibleSet.write(out);
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Attaches the PotentiallyVisibleSet in the visibility file to the World, or starts computing
+     * it in the background if BUILD_PVS is set.
+     */
+    private static void openVisibility(World world, File file) {
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (world.setPotentiallyVisibleSet(PotentiallyVisibleSet.read(in))) {
+                    return;
                 }
-                levelList.add(currentLine.toCharArray());
+            } catch (CorruptLevelFileException | IOException e) {
+                System.out.println("Visibility file couldn't be read: " + e.getMessage());
             }
-            char[][] levelMatrix = new char[height][width];
-            levelList.toArray(levelMatrix);
-            lineReader.close();
-            return levelMatrix;
-
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, e.getMessage());
-            System.exit(1);
         }
-        return null;
+        if (SettingsController.getInstance().getCurrentSettings().get("BUILD_PVS") == 1) {
+            new PvsBuilder(world, file).start();
+        }
+    }
+
+    /**
+     * Reads a level in the text format.
+     *
+     * @param reader the text of the level.
+     * @return the levelMatrix used by a World object.
+     * @throws CorruptLevelFileException with the line and column where the level is corrupt.
+     */
+    public static char[][] loadWorld(Reader reader) throws CorruptLevelFileException {
+        return LevelParser.parse(reader).getLevelMatrix();
     }
 
     /**
@@ -174,6 +277,24 @@ public class FileController {
         return null; // Is required for compile though execution doesn't arrive here.
     }
 
+    /**
+     * Saves the current report of the FrameProfiler to the profile.txt file.
+     *
+     * @param profiler the FrameProfiler to be saved.
+     */
+    public static void saveProfile(FrameProfiler profiler) {
+        try {
+            FileWriter fw = new FileWriter(new File("profile.txt"));
+            profiler.dump(new BufferedWriter(fw));
+            fw.close();
+
+        } catch (IOException e) {
+            System.out.println("Profile couldn't be saved.\n" +
+                    "Maybe incorrect permissions or drive is full");
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Saves the world to ${levelNumber}.lvl.
      * @param world the level to be saved
@@ -181,15 +302,29 @@ public class FileController {
      * @throws java.io.IOException
      */
     public static void saveWorld(World world, int levelNumber) throws IOException {
-        File file = new File("levels/" + levelNumber + ".lvl");
-        FileWriter fw = new FileWriter(file);
+        saveWorld(world, new File("levels/" + levelNumber + ".lvl"));
+    }
+
+    /**
+     * Saves the world to the given file in the text format.
+     * @param world the level to be saved
+     * @param file where to save it.
+     * @throws java.io.IOException
+     */
+    public static void saveWorld(World world, File file) throws IOException {
+        // Written next to the level first, as a large World may still be reading the level.
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileWriter fw = new FileWriter(tempFile);
         BufferedWriter writer = new BufferedWriter(fw);
         writer.write(world.getWidth() + " " + world.getHeight() + "\n");
-        for (char[] row: world.getLevelMatrix()) {
+        char[] row = new char[world.getWidth()];
+        for (int y = 0; y < world.getHeight(); y++) {
+            world.copyRow(y, row);
             writer.write(row);
             writer.newLine();
         }
         writer.flush();
         writer.close();
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 }
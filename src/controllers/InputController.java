@@ -10,10 +10,12 @@ import environment.Settings;
 import java.awt.event.KeyEvent;
 
 /**
- * A keyboard interface to an Entity.
+ * A keyboard interface to an Entity. On a split screen every seat has its own InputController
+ * reading the keys of the seat.
  */
 public class InputController implements ContainsSettings {
     private final Entity controllable;
+    private final String keyPrefix; // Prefix of the seat's key settings, empty for the first seat.
     private int KEY_UP;
     private int KEY_DOWN;
     private int KEY_LEFT;
@@ -39,7 +41,19 @@ public class InputController implements ContainsSettings {
      * @param controllable the Entity to be bound.
      */
     public InputController(Entity controllable) {
+        this(controllable, 1);
+    }
+
+    /**
+     * Creates an InputController for a seat of a split screen and binds an Entity to it.
+     *
+     * @param controllable the Entity to be bound.
+     * @param seat the number of the seat, from 1. The keys of seat n are read from the
+     *        settings starting with SEATn_, except for the first seat.
+     */
+    public InputController(Entity controllable, int seat) {
         this.controllable = controllable;
+        keyPrefix = (seat == 1) ? "" : "SEAT" + seat + "_";
         controllable.npc = false;
         movingUp = false;
         movingDown = false;
@@ -60,6 +74,9 @@ public class InputController implements ContainsSettings {
      */
     public void keyPressed(KeyEvent e) {
         int keyCode = e.getKeyCode();
+        if (keyCode == KeyEvent.VK_UNDEFINED) { // Never a bound key, even if set to 0.
+            return;
+        }
         if (keyCode == KEY_LEFT) {
             turningLeft = true;
 
@@ -78,10 +95,10 @@ public class InputController implements ContainsSettings {
         } else if (keyCode == KEY_STRAFE_RIGHT) {
             strafingRight = true;
 
-        } else if (keyCode == KeyEvent.VK_W) {
+        } else if (keyCode == KEY_LOOK_UP) {
             lookingUp = true;
 
-        } else if (keyCode == KeyEvent.VK_S) {
+        } else if (keyCode == KEY_LOOK_DOWN) {
             lookingDown = true;
 
         }
@@ -95,6 +112,9 @@ public class InputController implements ContainsSettings {
      */
     public void keyReleased(KeyEvent e) {
         int keyCode = e.getKeyCode();
+        if (keyCode == KeyEvent.VK_UNDEFINED) { // Never a bound key, even if set to 0.
+            return;
+        }
         if (keyCode == KEY_LEFT) {
             turningLeft = false;
 
@@ -160,14 +180,14 @@ public class InputController implements ContainsSettings {
      * @param settings
      */
     public void updateSettings(Settings settings) {
-        KEY_UP = settings.get("KEY_UP");
-        KEY_DOWN = settings.get("KEY_DOWN");
-        KEY_LEFT = settings.get("KEY_LEFT");
-        KEY_RIGHT = settings.get("KEY_RIGHT");
-        KEY_STRAFE_LEFT = settings.get("KEY_STRAFE_LEFT");
-        KEY_STRAFE_RIGHT = settings.get("KEY_STRAFE_RIGHT");
-        KEY_LOOK_UP = settings.get("KEY_LOOK_UP");
-        KEY_LOOK_DOWN = settings.get("KEY_LOOK_DOWN");
+        KEY_UP = settings.get(keyPrefix + "KEY_UP");
+        KEY_DOWN = settings.get(keyPrefix + "KEY_DOWN");
+        KEY_LEFT = settings.get(keyPrefix + "KEY_LEFT");
+        KEY_RIGHT = settings.get(keyPrefix + "KEY_RIGHT");
+        KEY_STRAFE_LEFT = settings.get(keyPrefix + "KEY_STRAFE_LEFT");
+        KEY_STRAFE_RIGHT = settings.get(keyPrefix + "KEY_STRAFE_RIGHT");
+        KEY_LOOK_UP = settings.get(keyPrefix + "KEY_LOOK_UP");
+        KEY_LOOK_DOWN = settings.get(keyPrefix + "KEY_LOOK_DOWN");
         GRID_SIZE = settings.get("GRID_SIZE");
     }
 }
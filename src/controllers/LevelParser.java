@@ -0,0 +1,399 @@
+package controllers;
+
+import exceptions.CorruptLevelFileException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Parses the text level format: "width height" on the first line, then a line of width chars
+ * for each row. Lines end with "\n" or "\r\n", the last one may end without. The chars are
+ * printable ASCII.
+ * <p>
+ * The bytes are fed in large buffers to a state machine, which copies the rows straight into
+ * one array, so no objects are made per row. The parser can also only validate, keeping
+ * nothing but its state, which works for files of any size.
+ * <p>
+ * In parallel mode the rows are expected to have the same length, so each thread reads and
+ * checks a band of rows from its known position. If any row is wrong, the file is parsed
+ * again from the start to find where.
+ */
+public class LevelParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BAND_BYTES = 1 << 20; // Bytes read by a thread at a time in parallel mode.
+    private static final int WIDTH = 0;
+    private static final int HEIGHT = 1;
+    private static final int ROWS = 2;
+    private static final int TRAILING = 3; // After the last row.
+    private final boolean keepCells;
+    private int state = WIDTH;
+    private long headerValue;
+    private int headerDigits;
+    private int width;
+    private int height;
+    private byte[] cells; // Row by row, null if only validating.
+    private int row;
+    private int x;
+    private boolean carriageReturn;
+    // Where the next byte is, for the errors.
+    private int line = 1;
+    private int column = 1;
+    private long headerLength; // Bytes in the header line.
+    private volatile boolean corruptRows; // Set by the RowBands.
+
+    /**
+     * Checks a band of rows in parallel mode.
+     */
+    private class RowBand extends RecursiveAction {
+        private final FileChannel channel;
+        private final long rowLength;
+        private final int firstRow;
+        private final int endRow;
+
+        RowBand(FileChannel channel, long rowLength, int firstRow, int endRow) {
+            this.channel = channel;
+            this.rowLength = rowLength;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            int rowsPerBand = (int) Math.max(BAND_BYTES / rowLength, 1);
+            if (endRow - firstRow > rowsPerBand) {
+                int middleRow = (firstRow + endRow) >>> 1;
+                invokeAll(new RowBand(channel, rowLength, firstRow, middleRow),
+                        new RowBand(channel, rowLength, middleRow, endRow));
+                return;
+            }
+            try {
+                long position = headerLength + firstRow * rowLength;
+                long end = Math.min(headerLength + endRow * rowLength, channel.size());
+                ByteBuffer band = ByteBuffer.allocate((int) (end - position));
+                while (band.hasRemaining()) {
+                    if (channel.read(band, position + band.position()) < 0) {
+                        corruptRows = true;
+                        return;
+                    }
+                }
+                byte[] bytes = band.array();
+                for (int bandRow = 0; bandRow < endRow - firstRow; bandRow++) {
+                    int rowStart = (int) (bandRow * rowLength);
+                    for (int i = rowStart; i < rowStart + width; i++) {
+                        if (!isCellChar(bytes[i])) {
+                            corruptRows = true;
+                            return;
+                        }
+                    }
+                    int rowEnd = rowStart + (int) rowLength;
+                    if (rowEnd <= bytes.length) { // The last row may lack the separator.
+                        if (bytes[rowEnd - 1] != '\n' || (rowLength - width == 2 && bytes[rowStart + width] != '\r')) {
+                            corruptRows = true;
+                            return;
+                        }
+                    }
+                    if (cells != null) {
+                        System.arraycopy(bytes, rowStart, cells, (firstRow + bandRow) * width, width);
+                    }
+                }
+            } catch (IOException e) {
+                corruptRows = true;
+            }
+        }
+    }
+
+    private LevelParser(boolean keepCells) {
+        this.keepCells = keepCells;
+    }
+
+    /**
+     * Parses a level file.
+     * @param file the level file.
+     * @param parallel if true the rows are read and checked by many threads.
+     * @return the parser with the level.
+     * @throws CorruptLevelFileException if the file can't be read or isn't a valid level.
+     */
+    public static LevelParser parse(File file, boolean parallel) throws CorruptLevelFileException {
+        return parallel ? readParallel(file, true) : read(file, true);
+    }
+
+    /**
+     * Parses a level from text.
+     * @param reader the text.
+     * @return the parser with the level.
+     * @throws CorruptLevelFileException if the text can't be read or isn't a valid level.
+     */
+    public static LevelParser parse(Reader reader) throws CorruptLevelFileException {
+        LevelParser parser = new LevelParser(true);
+        char[] chars = new char[BUFFER_SIZE];
+        byte[] bytes = new byte[BUFFER_SIZE];
+        try {
+            int length;
+            while ((length = reader.read(chars)) != -1) {
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = (chars[i] < 0x80) ? (byte) chars[i] : (byte) 0x7F; // Not ASCII, so invalid.
+                }
+                parser.feed(bytes, 0, length);
+            }
+            reader.close();
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level couldn't be read: " + e.getMessage());
+        }
+        parser.finish();
+        return parser;
+    }
+
+    /**
+     * Checks a level file without keeping the level in memory.
+     * @param file the level file.
+     * @param parallel if true the rows are read and checked by many threads.
+     * @throws CorruptLevelFileException if the file can't be read or isn't a valid level.
+     */
+    public static void validate(File file, boolean parallel) throws CorruptLevelFileException {
+        if (parallel) {
+            readParallel(file, false);
+        } else {
+            read(file, false);
+        }
+    }
+
+    /**
+     * Reads only the first line of a level file.
+     * @param file the level file.
+     * @return the parser with the width and height, but no cells.
+     * @throws CorruptLevelFileException if the file can't be read or the header isn't valid.
+     */
+    public static LevelParser readHeader(File file) throws CorruptLevelFileException {
+        LevelParser parser = new LevelParser(false);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 256)) {
+            byte[] next = new byte[1];
+            while (parser.state != ROWS) {
+                if (in.read(next) < 0) {
+                    parser.finish(); // Throws, as the header has no end.
+                }
+                parser.feed(next, 0, 1);
+            }
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level file couldn't be read: " + e.getMessage());
+        }
+        return parser;
+    }
+
+    /**
+     * @return the width of the level.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the level.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the bytes in the header line with its line separator, where the first row starts.
+     */
+    public long getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * @return the chars of the level row by row, null if only validated.
+     */
+    public byte[] getCells() {
+        return cells;
+    }
+
+    /**
+     * @return the level as a new char matrix.
+     */
+    public char[][] getLevelMatrix() {
+        char[][] levelMatrix = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                levelMatrix[y][x] = (char) cells[y * width + x];
+            }
+        }
+        return levelMatrix;
+    }
+
+    private static LevelParser read(File file, boolean keepCells) throws CorruptLevelFileException {
+        LevelParser parser = new LevelParser(keepCells);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                parser.feed(buffer, 0, length);
+            }
+        } catch (FileNotFoundException e) {
+            throw new CorruptLevelFileException("File not found:" + file);
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level file couldn't be read: " + e.getMessage());
+        }
+        parser.finish();
+        return parser;
+    }
+
+    private static LevelParser readParallel(File file, boolean keepCells) throws CorruptLevelFileException {
+        LevelParser parser = readHeader(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The separator after the first row tells the length of every row.
+            ByteBuffer separator = ByteBuffer.allocate(1);
+            channel.read(separator, parser.headerLength + parser.width);
+            long rowLength = parser.width + ((separator.get(0) == '\r') ? 2 : 1);
+            long rowsSize = channel.size() - parser.headerLength;
+            boolean sizeMatches = rowsSize == parser.height * rowLength
+                    || rowsSize == parser.height * rowLength - (rowLength - parser.width);
+            if (sizeMatches) {
+                if (keepCells) {
+                    parser.allocateCells();
+                }
+                ForkJoinPool.commonPool().invoke(parser.new RowBand(channel, rowLength, 0, parser.height));
+                if (!parser.corruptRows) {
+                    parser.state = TRAILING;
+                    return parser;
+                }
+            }
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level file couldn't be read: " + e.getMessage());
+        }
+        // The rows aren't all the same length. Find where, or parse the file as it is if
+        // it only mixes line separators.
+        return read(file, keepCells);
+    }
+
+    /**
+     * Parses the next bytes of the level.
+     */
+    private void feed(byte[] buffer, int offset, int length) throws CorruptLevelFileException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            byte b = buffer[i];
+            if (carriageReturn && b != '\n') {
+                throw new CorruptLevelFileException("Carriage return without a line feed.", line, column - 1);
+            }
+            if (b == '\n') {
+                endLine();
+                i++;
+            } else if (b == '\r') {
+                carriageReturn = true;
+                column++;
+                i++;
+            } else if (state == ROWS) {
+                if (x == width) {
+                    throw new CorruptLevelFileException("Line is longer than the width " + width + ".", line, column);
+                }
+                // Copy as much of the row as possible at once.
+                int start = i;
+                int rowEnd = Math.min(end, i + width - x);
+                while (i < rowEnd && isCellChar(buffer[i])) {
+                    i++;
+                }
+                if (i == start) {
+                    throw new CorruptLevelFileException("Invalid character " + (b & 0xFF) + ".", line, column);
+                }
+                if (cells != null) {
+                    System.arraycopy(buffer, start, cells, row * width + x, i - start);
+                }
+                x += i - start;
+                column += i - start;
+            } else if (state == TRAILING) {
+                throw new CorruptLevelFileException("Text after the last row.", line, column);
+            } else {
+                parseHeader(b);
+                i++;
+            }
+        }
+    }
+
+    private void parseHeader(byte b) throws CorruptLevelFileException {
+        if (b >= '0' && b <= '9') {
+            headerValue = headerValue * 10 + (b - '0');
+            headerDigits++;
+            if (headerValue > Integer.MAX_VALUE) {
+                throw new CorruptLevelFileException("Too large width or height.", line, column);
+            }
+        } else if (b == ' ' && state == WIDTH && headerDigits > 0) {
+            width = (int) headerValue;
+            headerValue = 0;
+            headerDigits = 0;
+            state = HEIGHT;
+        } else {
+            throw new CorruptLevelFileException("Expected the width and height separated by a space.", line, column);
+        }
+        column++;
+        headerLength++;
+    }
+
+    private void endLine() throws CorruptLevelFileException {
+        if (state == WIDTH || (state == HEIGHT && headerDigits == 0)) {
+            throw new CorruptLevelFileException("Expected the width and height separated by a space.", line, column);
+        } else if (state == HEIGHT) {
+            height = (int) headerValue;
+            if (width < 1 || height < 1) {
+                throw new CorruptLevelFileException("The width and height must be positive.", line, 1);
+            }
+            headerLength += carriageReturn ? 2 : 1;
+            if (keepCells) {
+                allocateCells();
+            }
+            state = ROWS;
+        } else if (state == ROWS) {
+            if (x != width) {
+                throw new CorruptLevelFileException("Line has " + x + " characters, expected the width "
+                        + width + ".", line, x + 1);
+            }
+            row++;
+            x = 0;
+            if (row == height) {
+                state = TRAILING;
+            }
+        }
+        carriageReturn = false;
+        line++;
+        column = 1;
+    }
+
+    /**
+     * Checks that the whole level was fed.
+     */
+    private void finish() throws CorruptLevelFileException {
+        if (carriageReturn) {
+            throw new CorruptLevelFileException("Carriage return without a line feed.", line, column - 1);
+        }
+        if (state == ROWS && row == height - 1 && x == width) { // The last line has no separator.
+            row++;
+            state = TRAILING;
+        }
+        if (state == WIDTH || state == HEIGHT) {
+            throw new CorruptLevelFileException("Level file ended in the header.", line, column);
+        } else if (state == ROWS) {
+            throw new CorruptLevelFileException("Level file ended after " + row + " of " + height + " rows.",
+                    line, column);
+        }
+    }
+
+    private void allocateCells() throws CorruptLevelFileException {
+        if ((long) width * height > Integer.MAX_VALUE - 8) {
+            throw new CorruptLevelFileException("Level is too large to be loaded whole.");
+        }
+        cells = new byte[width * height];
+    }
+
+    private static boolean isCellChar(byte b) {
+        return b >= 0x20 && b != 0x7F; // Printable ASCII, bytes over 0x7F are negative.
+    }
+}
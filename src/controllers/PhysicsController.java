@@ -16,6 +16,7 @@ import java.util.ArrayList;
  */
 public class PhysicsController implements ContainsSettings {
     private ArrayList<Entity> physicsObjectsList;
+    private final ArrayList<Entity> viewers = new ArrayList<Entity>(); // Collected on each update.
     private final World world;
 
     /**
@@ -38,10 +39,22 @@ public class PhysicsController implements ContainsSettings {
     }
 
     /**
-     * Updates Entities velocity, direction and position taking account on collisions.
+     * Updates Entities velocity, direction and position taking account on collisions. Moves of
+     * the entities no viewer can possibly see don't change the entity version of the World, so
+     * the renderer can keep its frame.
      */
     public void update() {
+        boolean entitiesChanged = false;
+        viewers.clear(); // The split screen adds its viewers to the list later.
         for (Entity e : physicsObjectsList) {
+            if (e.type == Entity.Type.VIEWER) {
+                viewers.add(e);
+            }
+        }
+        for (Entity e : physicsObjectsList) {
+            int oldX = e.x;
+            int oldY = e.y;
+            double oldDirection = e.direction;
             e.direction += e.directionChange;
             double newDirection = e.direction;
             e.velocity += e.acceleration;
@@ -71,7 +84,22 @@ public class PhysicsController implements ContainsSettings {
             e.newX = e.x + (int) (newVelocity * Math.cos(newDirection));
             e.newY = e.y + (int) (newVelocity * Math.sin(newDirection));
             handleCollision(e);
+            if (!entitiesChanged && (e.x != oldX || e.y != oldY || e.direction != oldDirection)) {
+                entitiesChanged = e.type == Entity.Type.VIEWER || seenByViewer(oldX, oldY) || seenByViewer(e.x, e.y);
+            }
+        }
+        if (entitiesChanged) { // Also the viewers, as on a split screen they see each other.
+            world.markEntitiesChanged();
+        }
+    }
+
+    private boolean seenByViewer(int x, int y) {
+        for (Entity viewer : viewers) {
+            if (world.isPotentiallyVisible(viewer.x, viewer.y, x, y)) {
+                return true;
+            }
         }
+        return false;
     }
 
     private void handleCollision(Entity e) {
@@ -0,0 +1,82 @@
+package controllers;
+
+import environment.PotentiallyVisibleSet;
+import environment.World;
+import exceptions.CorruptLevelFileException;
+import exceptions.ViewerNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Computes the PotentiallyVisibleSet of a level on a background thread of the lowest priority,
+ * attaches it to the World and saves it next to the level, so the next time it's only read.
+ * <p>
+ * Running this class computes the sets of levels offline, using every processor:
+ * <pre>
+ * java controllers.PvsBuilder levels/1.lvl levels/2.lvl
+ * </pre>
+ */
+public class PvsBuilder extends Thread {
+    private final World world;
+    private final File file;
+
+    /**
+     * @param world the level, which must not be read tile by tile.
+     * @param file where to save the set, as given by FileController.getVisibilityFile.
+     */
+    public PvsBuilder(World world, File file) {
+        super("PvsBuilder");
+        this.world = world;
+        this.file = file;
+        setDaemon(true);
+        setPriority(MIN_PRIORITY);
+    }
+
+    @Override
+    public void run() {
+        PotentiallyVisibleSet visibleSet = PotentiallyVisibleSet.build(world, false);
+        // Not saved if the level was changed meanwhile, it isn't the one in the level file.
+        if (world.setPotentiallyVisibleSet(visibleSet)) {
+            try {
+                FileController.saveVisibility(visibleSet, file);
+            } catch (IOException e) {
+                System.out.println("Visibility file couldn't be saved: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Computes and saves the potentially visible sets of the given levels.
+     * @param args the level files.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java controllers.PvsBuilder <level file>...");
+            System.exit(1);
+        }
+        for (String fileName : args) {
+            try {
+                World world = FileController.openWorld(fileName, false);
+                if (world.isTiled()) {
+                    System.out.println(fileName + " is too large for a visibility file.");
+                    continue;
+                }
+                long start = System.nanoTime();
+                PotentiallyVisibleSet visibleSet = PotentiallyVisibleSet.build(world, true);
+                File file = FileController.getVisibilityFile(new File(fileName));
+                FileController.saveVisibility(visibleSet, file);
+                System.out.println(file + ": blocks of " + visibleSet.getBlockSize() + " cells, "
+                        + visibleSet.getCompressedSize() + " bytes, "
+                        + (System.nanoTime() - start) / 1000000 + " ms.");
+            } catch (CorruptLevelFileException | ViewerNotFoundException | IOException e) {
+                System.out.println("Visibility of " + fileName + " couldn't be computed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -96,6 +96,10 @@ public class SettingsController {
                 throw new CorruptSettingsException("Invalid key \"" + key + "\" in settings.");
             }
         }
+        int gridSize = settings.get("GRID_SIZE");
+        if (gridSize <= 0 || (gridSize & (gridSize - 1)) != 0) { // Coordinates are mapped to the grid by shifting.
+            throw new CorruptSettingsException("GRID_SIZE must be a power of two.");
+        }
     }
 
     private void setDefaults() {
@@ -111,12 +115,40 @@ public class SettingsController {
         defaults.put("KEY_STRAFE_RIGHT", KeyEvent.VK_D);
         defaults.put("KEY_LOOK_UP", KeyEvent.VK_W);
         defaults.put("KEY_LOOK_DOWN", KeyEvent.VK_S);
+        // The other seats of a split screen, seat 4 is unbound. -1 is no key, as 0 is VK_UNDEFINED,
+        // the code of the key typed events and of keys Java doesn't know.
+        int[][] seatKeys = {
+                {KeyEvent.VK_I, KeyEvent.VK_K, KeyEvent.VK_J, KeyEvent.VK_L, KeyEvent.VK_U, KeyEvent.VK_O,
+                        KeyEvent.VK_Y, KeyEvent.VK_H},
+                {KeyEvent.VK_NUMPAD8, KeyEvent.VK_NUMPAD5, KeyEvent.VK_NUMPAD4, KeyEvent.VK_NUMPAD6,
+                        KeyEvent.VK_NUMPAD7, KeyEvent.VK_NUMPAD9, KeyEvent.VK_NUMPAD1, KeyEvent.VK_NUMPAD3},
+                {-1, -1, -1, -1, -1, -1, -1, -1}};
+        String[] keyNames = {"KEY_UP", "KEY_DOWN", "KEY_LEFT", "KEY_RIGHT", "KEY_STRAFE_LEFT", "KEY_STRAFE_RIGHT",
+                "KEY_LOOK_UP", "KEY_LOOK_DOWN"};
+        for (int seat = 2; seat <= 4; seat++) {
+            for (int i = 0; i < keyNames.length; i++) {
+                defaults.put("SEAT" + seat + "_" + keyNames[i], seatKeys[seat - 2][i]);
+            }
+        }
         defaults.put("PIXELS_PER_SQUARE", 32);
         defaults.put("GRID_SIZE", 1024);
         defaults.put("FOV", 60);
         defaults.put("WALL_TEXTURES", 3);
+        defaults.put("FLOOR_TEXTURE", 0);
+        defaults.put("CEILING_TEXTURE", 0);
         defaults.put("VIEW_DISTANCE", 3);
         defaults.put("SHOW_FPS", 1);
+        defaults.put("SHOW_PROFILE", 0);
+        defaults.put("KEY_DUMP_PROFILE", KeyEvent.VK_F12);
+        defaults.put("SOFTWARE_RENDERER", 0);
+        defaults.put("RENDER_THREADS", 1);
+        defaults.put("RAY_CASTER", 0);
+        defaults.put("ACTIVE_RENDERING", 0);
+        defaults.put("FRAME_PIPELINE", 0);
+        defaults.put("TARGET_FRAME_MS", 0);
+        defaults.put("VIEWPORTS", 1);
+        defaults.put("LEVEL_TILE_CACHE", 4096);
+        defaults.put("BUILD_PVS", 0);
     }
 
     private SettingsController() {
@@ -0,0 +1,84 @@
+package environment;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * The cells of a World changed between two of its versions, in the order they were changed.
+ * Given by World.getChangesSince and applied to another World of the same size with
+ * World.applyChanges.
+ */
+public class CellChanges {
+    private final int width;
+    private final int height;
+    private final int fromVersion;
+    private final int toVersion;
+    private final int[] xs;
+    private final int[] ys;
+    private final char[] chars;
+
+    CellChanges(int width, int height, int fromVersion, int toVersion, int[] xs, int[] ys, char[] chars) {
+        this.width = width;
+        this.height = height;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.xs = xs;
+        this.ys = ys;
+        this.chars = chars;
+    }
+
+    /**
+     * @return the version of the World before the changes.
+     */
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * @return the version of the World after the changes.
+     */
+    public int getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return the number of changes.
+     */
+    public int size() {
+        return chars.length;
+    }
+
+    /**
+     * @param i the change, from 0.
+     * @return the x coordinate in grid of the changed cell.
+     */
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * @param i the change, from 0.
+     * @return the y coordinate in grid of the changed cell.
+     */
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * @param i the change, from 0.
+     * @return the char the cell was changed to.
+     */
+    public char getChar(int i) {
+        return chars[i];
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+}
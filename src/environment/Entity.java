@@ -28,6 +28,7 @@ public class Entity {
         }
     }
 
+    public final Type type;
     public final double MAX_VEL;
     public final double ACCELERATION;
     public final double DIR_CHANGE_SPEED;
@@ -45,6 +46,7 @@ public class Entity {
      * @param attributes Type enum.
      */
     public Entity(Type attributes) {
+        type = attributes;
         MAX_VEL = attributes.MAX_VEL;
         ACCELERATION = attributes.ACCELERATION;
         DIR_CHANGE_SPEED = attributes.DIR_CHANGE_SPEED;
@@ -90,24 +90,23 @@ public class EntityFactory {
 
 
     /**
-     * Parses the world and creates entities according to the symbols.
+     * Creates entities according to the symbols in the world, found from its entity positions.
      *
      * @return a list containing the created entities.
      */
     public ArrayList<Entity> fill() {
         entityList = new ArrayList<Entity>();
 
-        for (int y = 0; y < world.getHeight(); y++) {
-            for (int x = 0; x < world.getWidth(); x++) {
-                char c = world.charAtGridPos(x, y);
-                if (Character.isLetter(c)) {
-                    if (c == 'v') { // Store index if entity is viewer for the getViewer() method.
-                        viewerIndex = entityList.size();
-                    }
-                    entityList.add(createEntity(x, y, c));
-                    world.setCharAtGridPos(x, y, '0'); // clear levelMatrix of entity.
-                }
+        int[] positions = world.getEntityPositions();
+        for (int i = 0; i < positions.length; i += 2) {
+            int x = positions[i];
+            int y = positions[i + 1];
+            char c = world.charAtGridPos(x, y);
+            if (c == 'v') { // Store index if entity is viewer for the getViewer() method.
+                viewerIndex = entityList.size();
             }
+            entityList.add(createEntity(x, y, c));
+            world.setCharAtGridPos(x, y, '0'); // clear levelMatrix of entity.
         }
 
         physicsController.setPhysicsObjectsList(entityList);
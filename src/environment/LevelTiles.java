@@ -0,0 +1,269 @@
+package environment;
+
+import controllers.LevelParser;
+import exceptions.CorruptLevelFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * A level too large for memory, split into square tiles read from the level file when first
+ * needed. The rows of a level file have the same length, so a row of a tile is read from a
+ * known position without reading the rows before it.
+ * <p>
+ * At most the given number of tiles are kept. When a tile must be loaded and the cache is full,
+ * a tile not used lately is dropped, found with the clock algorithm: every use marks a tile
+ * and the clock hand passes over marked tiles once, clearing the mark. Changed tiles are never
+ * dropped, as the changes exist only in memory until the level is saved.
+ * <p>
+ * Reading is safe from many threads, the tiles are only loaded and dropped under a lock.
+ * Changing the level while it's read has the same races as the World.
+ */
+public class LevelTiles {
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT; // Width and height of a tile in cells.
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private final File file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final long firstRowPosition;
+    private final long rowLength; // Bytes from a row to the next, including the line separator.
+    private final int tilesAcross;
+    private final Tile[] tiles; // By tile row and column, null if not loaded.
+    private int[] clock; // Indexes of the loaded tiles.
+    private int loadedTiles;
+    private int hand;
+
+    private static class Tile {
+        // Final, so the contents are seen by the threads reading the tile without a lock.
+        final byte[] cells;
+        final long[] walls;
+        boolean used; // Cleared by the clock hand.
+        boolean changed; // Kept until the level is reloaded.
+
+        Tile(byte[] cells) {
+            this.cells = cells;
+            walls = new long[cells.length / 64];
+            for (int cell = 0; cell < cells.length; cell++) {
+                set(cell, cells[cell]);
+            }
+        }
+
+        void set(int cell, byte c) {
+            cells[cell] = c;
+            if (c != '0' && !Character.isLetter((char) c)) { // Entities aren't walls.
+                walls[cell >>> 6] |= 1L << cell;
+            } else {
+                walls[cell >>> 6] &= ~(1L << cell);
+            }
+        }
+    }
+
+    /**
+     * Opens a level file. Only the header is read.
+     * @param file the level file.
+     * @param maxTiles how many tiles to keep in memory, at least one.
+     * @throws CorruptLevelFileException if the file can't be read or its size doesn't match
+     *         the header.
+     */
+    public LevelTiles(File file, int maxTiles) throws CorruptLevelFileException {
+        this.file = file;
+        LevelParser header = LevelParser.readHeader(file);
+        width = header.getWidth();
+        height = header.getHeight();
+        firstRowPosition = header.getHeaderLength();
+        try {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            // The rows end with the separator of the platform that saved the file.
+            ByteBuffer rowEnd = ByteBuffer.allocate(1);
+            channel.read(rowEnd, firstRowPosition + width);
+            rowLength = width + ((rowEnd.get(0) == '\r') ? 2 : 1);
+            long rowsSize = channel.size() - firstRowPosition;
+            if (rowsSize != height * rowLength && rowsSize != height * rowLength - (rowLength - width)) {
+                throw new CorruptLevelFileException("Level file size doesn't match the width and height.");
+            }
+        } catch (IOException e) {
+            throw new CorruptLevelFileException("Level file couldn't be read: " + e.getMessage());
+        }
+        tilesAcross = (width + TILE_MASK) >> TILE_SHIFT;
+        tiles = new Tile[tilesAcross * ((height + TILE_MASK) >> TILE_SHIFT)];
+        clock = new int[Math.max(maxTiles, 1)];
+    }
+
+    /**
+     * Opens the same level file again with the same changes. The copy can be changed without
+     * changing this one.
+     * @return the copy.
+     * @throws CorruptLevelFileException if the file can't be read any more.
+     */
+    public synchronized LevelTiles copy() throws CorruptLevelFileException {
+        LevelTiles copy = new LevelTiles(file, clock.length);
+        for (int i = 0; i < loadedTiles; i++) {
+            Tile tile = tiles[clock[i]];
+            if (tile.changed) {
+                Tile tileCopy = copy.tile(clock[i]);
+                System.arraycopy(tile.cells, 0, tileCopy.cells, 0, tile.cells.length);
+                System.arraycopy(tile.walls, 0, tileCopy.walls, 0, tile.walls.length);
+                tileCopy.changed = true;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the width of the level in cells.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the level in cells.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param x coordinate in grid, inside the level.
+     * @param y coordinate in grid, inside the level.
+     * @return the char of the cell.
+     */
+    public char charAt(int x, int y) {
+        return (char) tile(x, y).cells[cell(x, y)];
+    }
+
+    /**
+     * @param x coordinate in grid, inside the level.
+     * @param y coordinate in grid, inside the level.
+     * @return true if the cell is a wall.
+     */
+    public boolean wallAt(int x, int y) {
+        int cell = cell(x, y);
+        return (tile(x, y).walls[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Changes a cell. The tile is kept in memory from now on.
+     * @param x coordinate in grid, inside the level.
+     * @param y coordinate in grid, inside the level.
+     * @param c the new char.
+     */
+    public synchronized void set(int x, int y, char c) {
+        Tile tile = tile(x, y);
+        tile.changed = true;
+        tile.set(cell(x, y), (byte) c);
+    }
+
+    /**
+     * Stops reading the level file.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of tiles in memory.
+     */
+    public synchronized int getLoadedTiles() {
+        return loadedTiles;
+    }
+
+    private static int cell(int x, int y) {
+        return ((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+    }
+
+    private Tile tile(int x, int y) {
+        return tile((y >> TILE_SHIFT) * tilesAcross + (x >> TILE_SHIFT));
+    }
+
+    private Tile tile(int index) {
+        Tile tile = tiles[index];
+        if (tile == null) {
+            tile = load(index);
+        }
+        if (!tile.used) { // Read before writing to keep the cache line shared.
+            tile.used = true;
+        }
+        return tile;
+    }
+
+    private synchronized Tile load(int index) {
+        Tile tile = tiles[index];
+        if (tile != null) { // Loaded by another thread meanwhile.
+            return tile;
+        }
+        tile = read(index);
+        int slot;
+        if (loadedTiles < clock.length) {
+            slot = loadedTiles++;
+        } else {
+            slot = evict();
+        }
+        clock[slot] = index;
+        tiles[index] = tile;
+        return tile;
+    }
+
+    /**
+     * Drops a tile not used since the hand last passed it.
+     * @return the slot of the dropped tile in the clock.
+     */
+    private int evict() {
+        for (int passed = 0; passed < 2 * loadedTiles; passed++) {
+            int slot = hand;
+            hand = (hand + 1) % loadedTiles;
+            Tile tile = tiles[clock[slot]];
+            if (tile.changed) {
+                continue;
+            }
+            if (tile.used) {
+                tile.used = false;
+            } else {
+                tiles[clock[slot]] = null;
+                return slot;
+            }
+        }
+        // Every tile is changed, so the cache must grow.
+        clock = Arrays.copyOf(clock, clock.length * 2);
+        return loadedTiles++;
+    }
+
+    private Tile read(int index) {
+        byte[] cells = new byte[TILE_SIZE * TILE_SIZE];
+        Arrays.fill(cells, (byte) '1'); // The part outside the level.
+        int firstX = (index % tilesAcross) << TILE_SHIFT;
+        int firstY = (index / tilesAcross) << TILE_SHIFT;
+        int tileWidth = Math.min(TILE_SIZE, width - firstX);
+        int tileHeight = Math.min(TILE_SIZE, height - firstY);
+        try {
+            for (int y = 0; y < tileHeight; y++) {
+                ByteBuffer row = ByteBuffer.wrap(cells, y << TILE_SHIFT, tileWidth);
+                long position = firstRowPosition + (long) (firstY + y) * rowLength + firstX;
+                while (row.hasRemaining()) {
+                    if (channel.read(row, position + row.position() - (y << TILE_SHIFT)) < 0) {
+                        throw new IOException("Level file ended early.");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Tile(cells);
+    }
+}
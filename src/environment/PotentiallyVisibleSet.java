@@ -0,0 +1,641 @@
+package environment;
+
+import exceptions.CorruptLevelFileException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Tells which parts of a level can possibly be seen from where. The level is divided into
+ * square blocks of cells, as few cells as possible while there are at most MAX_BLOCKS of them,
+ * and for each block there is a bitset of the blocks seen from it.
+ * <p>
+ * A block sees another if a line from any point of its open cells reaches any point of a cell
+ * of the other, as the entities move freely inside the cells. A line of sight from inside a
+ * block leaves it through one of its open edge cells, so only those are looked from, with the
+ * precise permissive field of view, which finds the cells seen from anywhere in a cell. The
+ * cells seen are grown by a cell, as a sprite reaches half a cell from its entity. Cells block
+ * sight if they are walls, entities don't.
+ * <p>
+ * The bitsets are compressed by replacing each run of zero bytes with a zero byte and the
+ * length of the run.
+ */
+public class PotentiallyVisibleSet {
+    public static final int MAX_BLOCKS = 4096;
+    private static final int MAGIC = 0x52435653; // "RCVS"
+    private static final int VERSION = 2; // Version 1 was built from the centres of the cells only.
+    private static final int BLOCK_ROWS_PER_TASK = 4; // Rows of blocks built by one task.
+    private final int width;
+    private final int height;
+    private final long levelHash;
+    private final int blockShift; // log2 of the width of a block in cells.
+    private final int blocksX;
+    private final int blocksY;
+    private final int[] rowStarts; // Where the bitset of each block starts in the rows.
+    private final byte[] rows; // The compressed bitsets one after another.
+
+    private PotentiallyVisibleSet(int width, int height, long levelHash, int blockShift, int[] rowStarts,
+                                  byte[] rows) {
+        this.width = width;
+        this.height = height;
+        this.levelHash = levelHash;
+        this.blockShift = blockShift;
+        this.blocksX = ((width - 1) >> blockShift) + 1;
+        this.blocksY = ((height - 1) >> blockShift) + 1;
+        this.rowStarts = rowStarts;
+        this.rows = rows;
+    }
+
+    /**
+     * Tells if a char of the level blocks sight.
+     * @param c the char.
+     * @return true for the walls.
+     */
+    public static boolean blocksSight(char c) {
+        return c != '0' && !Character.isLetter(c);
+    }
+
+    /**
+     * Computes the potentially visible set of a level. Takes a while on large levels, so it's
+     * best done in the background or offline. The walls are copied first, so the World can be
+     * changed while the set is computed, but then the set doesn't match it any more.
+     *
+     * @param world the level, which must not be read tile by tile.
+     * @param parallel if true the blocks are divided between the common ForkJoinPool.
+     * @return the set.
+     */
+    public static PotentiallyVisibleSet build(World world, boolean parallel) {
+        Builder builder = new Builder(world);
+        Builder.BlockRows all = builder.new BlockRows(0, builder.blocksY);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(all);
+        } else {
+            all.compute();
+        }
+        int[] rowStarts = new int[builder.rows.length + 1];
+        for (int block = 0; block < builder.rows.length; block++) {
+            rowStarts[block + 1] = rowStarts[block] + builder.rows[block].length;
+        }
+        byte[] rows = new byte[rowStarts[builder.rows.length]];
+        for (int block = 0; block < builder.rows.length; block++) {
+            System.arraycopy(builder.rows[block], 0, rows, rowStarts[block], builder.rows[block].length);
+        }
+        return new PotentiallyVisibleSet(world.getWidth(), world.getHeight(), builder.levelHash,
+                builder.blockShift, rowStarts, rows);
+    }
+
+    /**
+     * Reads a set written by write.
+     * @param in the stream.
+     * @return the set.
+     * @throws CorruptLevelFileException if the stream doesn't have a valid set.
+     * @throws IOException if the stream can't be read.
+     */
+    public static PotentiallyVisibleSet read(DataInputStream in) throws CorruptLevelFileException, IOException {
+        if (in.readInt() != MAGIC) {
+            throw new CorruptLevelFileException("Not a visibility file.");
+        }
+        int version = in.readShort();
+        if (version != VERSION) {
+            throw new CorruptLevelFileException("Unsupported visibility file version " + version + ".");
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        long levelHash = in.readLong();
+        int blockShift = in.readByte();
+        if (width < 1 || height < 1 || blockShift < 0 || blockShift > 30
+                || blockShift != blockShift(width, height)) {
+            throw new CorruptLevelFileException("Corrupt size in visibility file.");
+        }
+        int blocks = (((width - 1) >> blockShift) + 1) * (((height - 1) >> blockShift) + 1);
+        int[] rowStarts = new int[blocks + 1];
+        for (int block = 1; block <= blocks; block++) {
+            rowStarts[block] = in.readInt();
+            if (rowStarts[block] < rowStarts[block - 1]) {
+                throw new CorruptLevelFileException("Corrupt row of block " + (block - 1) + " in visibility file.");
+            }
+        }
+        byte[] rows = new byte[rowStarts[blocks]];
+        in.readFully(rows);
+        // Each bitset must decode to a byte for every eight blocks, or the queries would overrun.
+        for (int block = 0; block < blocks; block++) {
+            int decoded = 0;
+            for (int i = rowStarts[block]; i < rowStarts[block + 1]; i++) {
+                if (rows[i] != 0) {
+                    decoded++;
+                } else if (++i < rowStarts[block + 1] && rows[i] != 0) {
+                    decoded += rows[i] & 0xFF;
+                } else {
+                    decoded = -1;
+                    break;
+                }
+            }
+            if (decoded != (blocks + 7) >>> 3) {
+                throw new CorruptLevelFileException("Corrupt row of block " + block + " in visibility file.");
+            }
+        }
+        return new PotentiallyVisibleSet(width, height, levelHash, blockShift, rowStarts, rows);
+    }
+
+    /**
+     * Writes the set so that read can read it.
+     * @param out the stream.
+     * @throws IOException if the stream can't be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeLong(levelHash);
+        out.writeByte(blockShift);
+        for (int block = 1; block < rowStarts.length; block++) {
+            out.writeInt(rowStarts[block]);
+        }
+        out.write(rows);
+    }
+
+    /**
+     * Checks if the set was computed for the walls of a World.
+     * @param world the level.
+     * @return false if the World has a different size or different walls.
+     */
+    public boolean matches(World world) {
+        return !world.isTiled() && world.getWidth() == width && world.getHeight() == height
+                && hash(world) == levelHash;
+    }
+
+    /**
+     * Tells if a cell can possibly be seen from another.
+     * @param fromX coordinate in grid of the cell looked from.
+     * @param fromY coordinate in grid of the cell looked from.
+     * @param toX coordinate in grid of the cell looked at.
+     * @param toY coordinate in grid of the cell looked at.
+     * @return false only if the cell looked at is surely not seen.
+     */
+    public boolean isVisible(int fromX, int fromY, int toX, int toY) {
+        int bit = block(toX, toY);
+        int byteIndex = bit >>> 3;
+        int i = rowStarts[block(fromX, fromY)];
+        for (int decoded = 0; ; i++) {
+            if (rows[i] == 0) {
+                decoded += rows[++i] & 0xFF;
+                if (decoded > byteIndex) {
+                    return false;
+                }
+            } else if (decoded++ == byteIndex) {
+                return (rows[i] & (1 << (bit & 7))) != 0;
+            }
+        }
+    }
+
+    /**
+     * Decodes the bitset of the blocks seen from a cell, to be tested with contains. Cheaper
+     * than isVisible when many cells are looked at from the same one.
+     * @param x coordinate in grid.
+     * @param y coordinate in grid.
+     * @param blocks where to decode the bitset, or null.
+     * @return the bitset, in blocks if it's long enough, otherwise in a new array.
+     */
+    public long[] visibleBlocks(int x, int y, long[] blocks) {
+        int words = (blocksX * blocksY + 63) >>> 6;
+        if (blocks == null || blocks.length < words) {
+            blocks = new long[words];
+        } else {
+            Arrays.fill(blocks, 0, words, 0);
+        }
+        int block = block(x, y);
+        int byteIndex = 0;
+        for (int i = rowStarts[block]; i < rowStarts[block + 1]; i++) {
+            if (rows[i] == 0) {
+                byteIndex += rows[++i] & 0xFF;
+            } else {
+                blocks[byteIndex >>> 3] |= (rows[i] & 0xFFL) << ((byteIndex & 7) << 3);
+                byteIndex++;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Tests a bitset given by visibleBlocks.
+     * @param blocks the bitset of the blocks seen.
+     * @param x coordinate in grid of the cell looked at.
+     * @param y coordinate in grid of the cell looked at.
+     * @return false only if the cell is surely not seen.
+     */
+    public boolean contains(long[] blocks, int x, int y) {
+        int bit = block(x, y);
+        return (blocks[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the width and height of a block in cells.
+     */
+    public int getBlockSize() {
+        return 1 << blockShift;
+    }
+
+    /**
+     * @return the size of the compressed bitsets in bytes.
+     */
+    public int getCompressedSize() {
+        return rows.length;
+    }
+
+    private int block(int x, int y) {
+        x = Math.min(Math.max(x, 0), width - 1);
+        y = Math.min(Math.max(y, 0), height - 1);
+        return (y >> blockShift) * blocksX + (x >> blockShift);
+    }
+
+    /**
+     * @return the smallest block shift giving at most MAX_BLOCKS blocks.
+     */
+    private static int blockShift(int width, int height) {
+        int shift = 0;
+        while ((long) (((width - 1) >> shift) + 1) * (((height - 1) >> shift) + 1) > MAX_BLOCKS) {
+            shift++;
+        }
+        return shift;
+    }
+
+    /**
+     * @return a hash of which cells of the World block sight.
+     */
+    private static long hash(World world) {
+        long hash = ((long) world.getWidth() << 32) | world.getHeight();
+        char[] row = new char[world.getWidth()];
+        long word = 0;
+        int bits = 0;
+        for (int y = 0; y < world.getHeight(); y++) {
+            world.copyRow(y, row);
+            for (char c : row) {
+                word = word << 1 | (blocksSight(c) ? 1 : 0);
+                if (++bits == 64) {
+                    hash = hash * 0x9E3779B97F4A7C15L + word;
+                    word = 0;
+                    bits = 0;
+                }
+            }
+        }
+        return hash * 0x9E3779B97F4A7C15L + word;
+    }
+
+    /**
+     * Computes the bitsets from a copy of the walls.
+     */
+    private static class Builder {
+        private final int width;
+        private final int height;
+        private final int stride; // Width of a row including a border of walls.
+        private final long[] opaque; // A bit for each cell blocking sight, including the border.
+        private final long levelHash;
+        private final int blockShift;
+        private final int blocksX;
+        private final int blocksY;
+        private final byte[][] rows;
+
+        Builder(World world) {
+            width = world.getWidth();
+            height = world.getHeight();
+            stride = width + 2;
+            opaque = new long[(stride * (height + 2) + 63) >>> 6];
+            char[] row = new char[width];
+            for (int y = -1; y <= height; y++) {
+                if (y >= 0 && y < height) {
+                    world.copyRow(y, row);
+                }
+                for (int x = -1; x <= width; x++) {
+                    boolean border = y < 0 || y == height || x < 0 || x == width;
+                    if (border || blocksSight(row[x])) {
+                        int index = (y + 1) * stride + x + 1;
+                        opaque[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+            levelHash = hash(world);
+            blockShift = blockShift(width, height);
+            blocksX = ((width - 1) >> blockShift) + 1;
+            blocksY = ((height - 1) >> blockShift) + 1;
+            rows = new byte[blocksX * blocksY][];
+        }
+
+        /**
+         * Builds the bitsets of some rows of blocks, dividing them between tasks.
+         */
+        private class BlockRows extends RecursiveAction {
+            private final int firstRow;
+            private final int endRow;
+
+            BlockRows(int firstRow, int endRow) {
+                this.firstRow = firstRow;
+                this.endRow = endRow;
+            }
+
+            @Override
+            protected void compute() {
+                if (endRow - firstRow > BLOCK_ROWS_PER_TASK) {
+                    int middleRow = (firstRow + endRow) >>> 1;
+                    invokeAll(new BlockRows(firstRow, middleRow), new BlockRows(middleRow, endRow));
+                    return;
+                }
+                long[] seen = new long[(blocksX * blocksY + 63) >>> 6];
+                for (int blockY = firstRow; blockY < endRow; blockY++) {
+                    for (int blockX = 0; blockX < blocksX; blockX++) {
+                        Arrays.fill(seen, 0);
+                        buildBlock(blockX, blockY, seen);
+                        rows[blockY * blocksX + blockX] = compress(seen, blocksX * blocksY);
+                    }
+                }
+            }
+        }
+
+        private void buildBlock(int blockX, int blockY, long[] seen) {
+            int block = blockY * blocksX + blockX;
+            seen[block >>> 6] |= 1L << block;
+            int firstX = blockX << blockShift;
+            int firstY = blockY << blockShift;
+            int endX = Math.min(firstX + (1 << blockShift), width);
+            int endY = Math.min(firstY + (1 << blockShift), height);
+            for (int y = firstY; y < endY; y++) {
+                boolean edgeRow = y == firstY || y == endY - 1;
+                for (int x = firstX; x < endX; x++) {
+                    if (!edgeRow && x != firstX && x != endX - 1) {
+                        x = endX - 2; // To the last cell of the row.
+                        continue;
+                    }
+                    if (!isOpaque(x, y)) {
+                        lookFrom(x, y, seen);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Marks the cells seen from anywhere in a cell, a quadrant at a time.
+         */
+        private void lookFrom(int x, int y, long[] seen) {
+            see(x, y, seen);
+            // As far as the border walls.
+            lookQuadrant(x, y, 1, 1, width - x, height - y, seen);
+            lookQuadrant(x, y, 1, -1, width - x, y + 1, seen);
+            lookQuadrant(x, y, -1, -1, x + 1, y + 1, seen);
+            lookQuadrant(x, y, -1, 1, x + 1, height - y, seen);
+        }
+
+        /**
+         * Walks a quadrant a diagonal at a time, away from the cell looked from. The lines of sight
+         * still open are kept as views, each between a shallow and a steep line, in the
+         * coordinates of the corners of the cells with the cell looked from at (0, 0)-(1, 1).
+         * The views are in order from the shallowest, as the cells of a diagonal are visited.
+         */
+        private void lookQuadrant(int fromX, int fromY, int signX, int signY, int extentX, int extentY,
+                                  long[] seen) {
+            ArrayList<View> views = new ArrayList<View>();
+            views.add(new View(new Line(0, 1, extentX, 0), new Line(1, 0, 0, extentY)));
+            for (int i = 1; i <= extentX + extentY && !views.isEmpty(); i++) {
+                int view = 0;
+                for (int j = Math.max(i - extentX, 0); j <= Math.min(i, extentY) && view < views.size(); j++) {
+                    view = visit(fromX, fromY, signX, signY, i - j, j, view, views, seen);
+                }
+            }
+        }
+
+        /**
+         * Marks a cell if it's in a view and narrows the view if the cell is a wall.
+         * @return the first view which may contain the next cells of the diagonal.
+         */
+        private int visit(int fromX, int fromY, int signX, int signY, int x, int y, int viewIndex,
+                          ArrayList<View> views, long[] seen) {
+            int topLeftX = x;
+            int topLeftY = y + 1;
+            int bottomRightX = x + 1;
+            int bottomRightY = y;
+            while (viewIndex < views.size() && views.get(viewIndex).steep.isBelowOrContains(bottomRightX,
+                    bottomRightY)) {
+                viewIndex++;
+            }
+            if (viewIndex == views.size() || views.get(viewIndex).shallow.isAboveOrContains(topLeftX, topLeftY)) {
+                return viewIndex; // Between the views.
+            }
+            int cellX = fromX + x * signX;
+            int cellY = fromY + y * signY;
+            see(cellX, cellY, seen);
+            if (!isOpaque(cellX, cellY)) {
+                return viewIndex;
+            }
+            View view = views.get(viewIndex);
+            boolean aboveShallow = view.shallow.isAbove(bottomRightX, bottomRightY);
+            boolean belowSteep = view.steep.isBelow(topLeftX, topLeftY);
+            if (aboveShallow && belowSteep) { // Blocks the whole view.
+                views.remove(viewIndex);
+            } else if (aboveShallow) { // Blocks the shallow side.
+                view.addShallowBump(topLeftX, topLeftY);
+                if (view.isClosed()) {
+                    views.remove(viewIndex);
+                }
+            } else if (belowSteep) { // Blocks the steep side.
+                view.addSteepBump(bottomRightX, bottomRightY);
+                if (view.isClosed()) {
+                    views.remove(viewIndex);
+                }
+            } else { // In the middle, the view is split in two.
+                View shallowView = view.copy();
+                views.add(viewIndex, shallowView);
+                int steepIndex = viewIndex + 1;
+                shallowView.addSteepBump(bottomRightX, bottomRightY);
+                if (shallowView.isClosed()) {
+                    views.remove(viewIndex);
+                    steepIndex--;
+                }
+                view.addShallowBump(topLeftX, topLeftY);
+                if (view.isClosed()) {
+                    views.remove(steepIndex);
+                }
+            }
+            return viewIndex;
+        }
+
+        private boolean isOpaque(int x, int y) {
+            if (x < -1 || y < -1 || x > width || y > height) {
+                return true;
+            }
+            int index = (y + 1) * stride + x + 1;
+            return (opaque[index >>> 6] & (1L << index)) != 0;
+        }
+
+        /**
+         * Marks the blocks of a seen cell and the cells around it.
+         */
+        private void see(int x, int y, long[] seen) {
+            int firstBlockX = Math.max(x - 1, 0) >> blockShift;
+            int lastBlockX = Math.min(x + 1, width - 1) >> blockShift;
+            int firstBlockY = Math.max(y - 1, 0) >> blockShift;
+            int lastBlockY = Math.min(y + 1, height - 1) >> blockShift;
+            for (int blockY = firstBlockY; blockY <= lastBlockY; blockY++) {
+                for (int blockX = firstBlockX; blockX <= lastBlockX; blockX++) {
+                    int block = blockY * blocksX + blockX;
+                    seen[block >>> 6] |= 1L << block;
+                }
+            }
+        }
+
+        /**
+         * A line through two corners of cells.
+         */
+        private static class Line {
+            int startX;
+            int startY;
+            int endX;
+            int endY;
+
+            Line(int startX, int startY, int endX, int endY) {
+                this.startX = startX;
+                this.startY = startY;
+                this.endX = endX;
+                this.endY = endY;
+            }
+
+            /**
+             * @return positive if the point is below the line, negative if above and 0 if on it.
+             */
+            long side(int x, int y) {
+                return (long) (endY - startY) * (endX - x) - (long) (endX - startX) * (endY - y);
+            }
+
+            boolean isBelow(int x, int y) {
+                return side(x, y) > 0;
+            }
+
+            boolean isBelowOrContains(int x, int y) {
+                return side(x, y) >= 0;
+            }
+
+            boolean isAbove(int x, int y) {
+                return side(x, y) < 0;
+            }
+
+            boolean isAboveOrContains(int x, int y) {
+                return side(x, y) <= 0;
+            }
+
+            boolean contains(int x, int y) {
+                return side(x, y) == 0;
+            }
+        }
+
+        /**
+         * A corner of a wall a line of a view was bent around, and the ones bent around before.
+         */
+        private static class Bump {
+            final int x;
+            final int y;
+            final Bump parent;
+
+            Bump(int x, int y, Bump parent) {
+                this.x = x;
+                this.y = y;
+                this.parent = parent;
+            }
+        }
+
+        /**
+         * The lines of sight between a shallow and a steep line.
+         */
+        private static class View {
+            final Line shallow;
+            final Line steep;
+            Bump shallowBumps;
+            Bump steepBumps;
+
+            View(Line shallow, Line steep) {
+                this.shallow = shallow;
+                this.steep = steep;
+            }
+
+            View copy() {
+                View copy = new View(new Line(shallow.startX, shallow.startY, shallow.endX, shallow.endY),
+                        new Line(steep.startX, steep.startY, steep.endX, steep.endY));
+                copy.shallowBumps = shallowBumps; // The bumps aren't changed, only added.
+                copy.steepBumps = steepBumps;
+                return copy;
+            }
+
+            /**
+             * Bends the shallow line around the corner of a wall, and around the corners the steep
+             * line was bent around if the shallow line would pass above them.
+             */
+            void addShallowBump(int x, int y) {
+                shallow.endX = x;
+                shallow.endY = y;
+                shallowBumps = new Bump(x, y, shallowBumps);
+                for (Bump bump = steepBumps; bump != null; bump = bump.parent) {
+                    if (shallow.isAbove(bump.x, bump.y)) {
+                        shallow.startX = bump.x;
+                        shallow.startY = bump.y;
+                    }
+                }
+            }
+
+            void addSteepBump(int x, int y) {
+                steep.endX = x;
+                steep.endY = y;
+                steepBumps = new Bump(x, y, steepBumps);
+                for (Bump bump = shallowBumps; bump != null; bump = bump.parent) {
+                    if (steep.isBelow(bump.x, bump.y)) {
+                        steep.startX = bump.x;
+                        steep.startY = bump.y;
+                    }
+                }
+            }
+
+            /**
+             * @return true if the lines are the same line through a corner of the cell looked
+             * from, so that nothing can be seen between them.
+             */
+            boolean isClosed() {
+                return shallow.contains(steep.startX, steep.startY) && shallow.contains(steep.endX, steep.endY)
+                        && (shallow.contains(0, 1) || shallow.contains(1, 0));
+            }
+        }
+
+        private static byte[] compress(long[] seen, int blocks) {
+            byte[] compressed = new byte[(blocks + 7) >>> 3 << 1];
+            int length = 0;
+            int zeros = 0;
+            for (int byteIndex = 0; byteIndex < (blocks + 7) >>> 3; byteIndex++) {
+                byte b = (byte) (seen[byteIndex >>> 3] >>> ((byteIndex & 7) << 3));
+                if (b == 0 && zeros < 255) {
+                    zeros++;
+                    continue;
+                }
+                if (zeros > 0) {
+                    compressed[length++] = 0;
+                    compressed[length++] = (byte) zeros;
+                    zeros = 0;
+                }
+                if (b == 0) {
+                    zeros = 1;
+                } else {
+                    compressed[length++] = b;
+                }
+            }
+            if (zeros > 0) {
+                compressed[length++] = 0;
+                compressed[length++] = (byte) zeros;
+            }
+            return Arrays.copyOf(compressed, length);
+        }
+    }
+}
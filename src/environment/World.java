@@ -2,22 +2,67 @@ package environment;
 
 import controllers.ContainsSettings;
 import controllers.SettingsController;
+import exceptions.CorruptLevelFileException;
 import exceptions.ViewerNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
  * See COPYING for information on licensing.
  */
 
 /**
- * The level representation in the engine. Contains walls and entities represented in
- * a char matrix.
+ * The level representation in the engine. Contains walls and entities represented by the
+ * chars of the level file.
+ * <p>
+ * The chars are stored as bytes in a flat array, row by row, surrounded by a border of wall1.
+ * A ray leaving the level hits the border, so the grid never has to be read outside the array.
+ * Which cells are walls is also kept in a bitset for the ray casters and the collisions. The
+ * chars of the entities aren't walls. GRID_SIZE is a power of two, so coordinates are mapped
+ * to cells by shifting.
+ * <p>
+ * For each cell the distance to the nearest wall is kept too, counted in cells diagonally as
+ * well as straight and capped at MAX_WALL_DISTANCE. A ray in a cell at distance d can cross the
+ * d - 1 cells around it without looking at them. When a cell is changed, only the distances
+ * around it are computed again.
+ * <p>
+ * The changes made by setCharAtGridPos are kept in a journal, up to MAX_JOURNAL of them, and
+ * told to the WorldChangeListeners. Another World with the level of an earlier version can be
+ * brought up to date with the changes since, and the changes can be reverted. Which cells have
+ * an entity is kept in a bitset, so the entities are found without reading the whole level.
+ * <p>
+ * A PotentiallyVisibleSet computed for the level can be attached to tell which cells can't be
+ * seen from where. It's dropped when a wall is added or removed.
+ * <p>
+ * A level too large for memory is read from its file in tiles by LevelTiles instead.
  */
 public class World implements ContainsSettings {
+    private static final byte BORDER = '1';
+    public static final int MAX_WALL_DISTANCE = 32;
+    public static final int MAX_JOURNAL = 1 << 18; // The oldest half is dropped when full.
     private int width;
     private int height;
-    private char[][] levelMatrix;
+    private int stride; // Width of a row in cells, including the border.
+    private byte[] cells; // The chars of the level with the border.
+    private long[] walls; // A bit for each cell, set if it's a wall.
+    private long[] entities; // A bit for each cell, set if it has an entity char.
+    private byte[] wallDistances; // For each cell, see wallDistanceAtGridPos.
+    private LevelTiles tiles; // Used instead of the cells if not null.
+    private volatile PotentiallyVisibleSet visibleSet; // May be null.
+    private volatile int version; // Changed with the walls.
+    private volatile int sightVersion; // Changed when a cell starts or stops blocking sight.
+    private volatile int entityVersion; // Changed when entities move.
+    private int journalVersion; // The version before the first change in the journal.
+    private int journalSize;
+    private int[] journalXs = new int[0];
+    private int[] journalYs = new int[0];
+    private char[] journalOldChars = new char[0];
+    private char[] journalChars = new char[0];
+    private final ArrayList<WorldChangeListener> changeListeners = new ArrayList<WorldChangeListener>();
     public static int GRID_SIZE;
+    public static int GRID_SHIFT; // log2 of GRID_SIZE.
 
     /**
      * Constructs a World with the given level matrix.
@@ -30,19 +75,67 @@ public class World implements ContainsSettings {
     }
 
     /**
-     * Returns a deep copy of the levelMatrix.
+     * Constructs a World with the chars of the level as bytes.
+     * @param width of the level.
+     * @param height of the level.
+     * @param levelCells the chars row by row, width * height of them.
+     */
+    public World(int width, int height, byte[] levelCells) {
+        SettingsController.getInstance().addListener(this);
+        reInit(width, height, levelCells);
+    }
+
+    private World() {
+        SettingsController.getInstance().addListener(this);
+    }
+
+    /**
+     * Constructs a World reading a large level from its file tile by tile.
+     * @param tiles the opened level file.
+     */
+    public World(LevelTiles tiles) {
+        SettingsController.getInstance().addListener(this);
+        reInit(tiles);
+    }
+
+    /**
+     * Returns a copy of the World, which can be changed without changing this one.
+     * @return ditto.
+     * @throws CorruptLevelFileException if the level file of a large level can't be read.
+     */
+    public World copy() throws CorruptLevelFileException {
+        if (tiles != null) {
+            return new World(tiles.copy());
+        }
+        World copy = new World();
+        copy.reInit(copyLevelMatrix());
+        copy.visibleSet = visibleSet;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the level as a char matrix.
      * @return ditto.
      */
     public char[][] copyLevelMatrix() {
         char[][] copy = new char[height][width];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                copy[y][x] = levelMatrix[y][x];
-            }
+        for (int y = 0; y < height; y++) {
+            copyRow(y, copy[y]);
         }
         return copy;
     }
 
+    /**
+     * Copies a row of the level. Unlike copyLevelMatrix works with levels too large for memory.
+     * @param y the row in grid.
+     * @param row where to copy the chars, at least as long as the width.
+     */
+    public void copyRow(int y, char[] row) {
+        for (int x = 0; x < width; x++) {
+            row[x] = charAtGridPos(x, y);
+        }
+    }
+
     /**
      * Essentially as the constructor, but doesn't create a new object.
      * To be used when the same World is used in many places, say the engine
@@ -52,52 +145,159 @@ public class World implements ContainsSettings {
      * @throws ViewerNotFoundException
      */
     public void reInit(char[][] levelMatrix) {
-        this.levelMatrix = levelMatrix;
-        width = levelMatrix[0].length;
-        height = levelMatrix.length;
+        allocate(levelMatrix[0].length, levelMatrix.length);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                setCell(index(x, y), (byte) levelMatrix[y][x]);
+            }
+        }
+        wallDistances = computeWallDistances(0, 0, stride, height + 2);
+        visibleSet = null;
+        version++;
+        clearJournal();
+    }
+
+    /**
+     * As reInit with a level matrix, but with the chars of the level as bytes.
+     * @param width of the level.
+     * @param height of the level.
+     * @param levelCells the chars row by row, width * height of them.
+     */
+    public void reInit(int width, int height, byte[] levelCells) {
+        allocate(width, height);
+        for (int y = 0; y < height; y++) {
+            int index = index(0, y);
+            System.arraycopy(levelCells, y * width, cells, index, width);
+            // The bitsets are still clear inside the border.
+            for (int end = index + width; index < end; index++) {
+                if (isEntity(cells[index])) {
+                    entities[index >>> 6] |= 1L << index;
+                } else if (cells[index] != '0') {
+                    walls[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+        wallDistances = computeWallDistances(0, 0, stride, height + 2);
+        visibleSet = null;
+        version++;
+        clearJournal();
+    }
+
+    /**
+     * Changes to a large level read from its file tile by tile.
+     * @param tiles the opened level file.
+     */
+    public void reInit(LevelTiles tiles) {
+        closeTiles();
+        this.tiles = tiles;
+        width = tiles.getWidth();
+        height = tiles.getHeight();
+        stride = 0;
+        cells = null;
+        walls = null;
+        entities = null;
+        wallDistances = null;
+        visibleSet = null;
+        version++;
+        clearJournal();
     }
 
     /**
-     * Returns the matrix representing the level.
+     * Takes the level of another World, which shouldn't be used any more.
+     * @param other the World with the new level.
+     */
+    public void reInit(World other) {
+        if (other.tiles != null) {
+            reInit(other.tiles);
+            other.tiles = null;
+        } else {
+            closeTiles();
+            width = other.width;
+            height = other.height;
+            stride = other.stride;
+            cells = other.cells;
+            walls = other.walls;
+            entities = other.entities;
+            wallDistances = other.wallDistances;
+            visibleSet = other.visibleSet;
+            version++;
+            clearJournal();
+        }
+    }
+
+    /**
+     * @return true if the level is read from its file tile by tile.
+     */
+    public boolean isTiled() {
+        return tiles != null;
+    }
+
+    /**
+     * Returns the level as a char matrix. The matrix is a copy, so changes to it don't change
+     * the World.
      * @return ditto.
      */
     public char[][] getLevelMatrix() {
-        return levelMatrix;
+        return copyLevelMatrix();
     }
 
     /**
      * Checks if there's a solid wall at the given coordinates.
-     * There's always a wall outside the levelMatrix.
+     * There's always a wall outside the level.
      *
      * @param x coordinate.
      * @param y coordinate.
      * @return true if wall at position.
      */
     public boolean wallAtPos(int x, int y) {
-        try {
-            x /= GRID_SIZE;
-            y /= GRID_SIZE;
-            return levelMatrix[y][x] != '0';
-        } catch (ArrayIndexOutOfBoundsException e) {
+        return wallAtGridPos(x >> GRID_SHIFT, y >> GRID_SHIFT);
+    }
+
+    /**
+     * Same as wallAtPos but, snapped to the grid.
+     *
+     * @param x coordinate in grid.
+     * @param y coordinate in grid.
+     * @return true if wall at position or the position is outside the level.
+     */
+    public boolean wallAtGridPos(int x, int y) {
+        if (x < -1 || y < -1 || x > width || y > height) { // Beyond the border.
             return true;
         }
+        if (tiles != null) {
+            return x == -1 || y == -1 || x == width || y == height || tiles.wallAt(x, y);
+        }
+        int index = index(x, y);
+        return (walls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Tells how far the nearest wall is from a cell, counting a diagonal step as one cell. Every
+     * cell less than the distance away horizontally and vertically is empty.
+     *
+     * @param x coordinate in grid.
+     * @param y coordinate in grid.
+     * @return 0 for a wall, otherwise the distance from 1 to MAX_WALL_DISTANCE. Always 1 for the
+     *         empty cells of a level read tile by tile.
+     */
+    public int wallDistanceAtGridPos(int x, int y) {
+        if (x < -1 || y < -1 || x > width || y > height) {
+            return 0;
+        }
+        if (tiles != null) {
+            return wallAtGridPos(x, y) ? 0 : 1;
+        }
+        return wallDistances[index(x, y)];
     }
 
     /**
-     * Returns a char from the levelMatrix.
+     * Returns a char of the level.
      * @param x coordinate
      * @param y coordinate
-     * @return the char at given position in the levelMatrix.
+     * @return the char at given position, wall1 outside the level.
      */
     public char charAtPos(int x, int y) {
-        try {
-            x /= GRID_SIZE;
-            y /= GRID_SIZE;
-            return levelMatrix[y][x];
-        } catch (ArrayIndexOutOfBoundsException e) {
-            // If raycaster outside of matrix. Return the wall1.
-            return '1';
-        }
+        return charAtGridPos(x >> GRID_SHIFT, y >> GRID_SHIFT);
     }
 
     /**
@@ -105,21 +305,230 @@ public class World implements ContainsSettings {
      *
      * @param x coordinate in grid.
      * @param y coordinate in grid.
-     * @return char at given position in levelMatrix.
+     * @return char at given position, wall1 outside the level.
      */
     public char charAtGridPos(int x, int y) {
-        return levelMatrix[y][x];
+        if (x < -1 || y < -1 || x > width || y > height) {
+            return (char) BORDER;
+        }
+        if (tiles != null) {
+            boolean border = x == -1 || y == -1 || x == width || y == height;
+            return border ? (char) BORDER : tiles.charAt(x, y);
+        }
+        return (char) cells[index(x, y)];
     }
 
     /**
-     * Setter for char at given grid position.
+     * Setter for char at given grid position. A change is added to the journal and told to the
+     * WorldChangeListeners, setting the char the cell already has does nothing.
      *
      * @param x coordinate in grid.
      * @param y coordinate in grid.
      * @param c char to be set.
      */
     public void setCharAtGridPos(int x, int y, char c) {
-        levelMatrix[y][x] = c;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the level.");
+        }
+        char oldChar = charAtGridPos(x, y);
+        if (oldChar == c) {
+            return;
+        }
+        boolean sightChanged = PotentiallyVisibleSet.blocksSight(oldChar) != PotentiallyVisibleSet.blocksSight(c);
+        if (tiles != null) {
+            tiles.set(x, y, c);
+        } else {
+            int index = index(x, y);
+            boolean wasWall = isWall(index);
+            setCell(index, (byte) c);
+            if (isWall(index) != wasWall) {
+                updateWallDistances(x + 1, y + 1);
+            }
+        }
+        if (sightChanged) {
+            sightVersion++;
+            visibleSet = null;
+        }
+        version++;
+        record(x, y, oldChar, c);
+        for (WorldChangeListener listener : changeListeners) {
+            listener.cellChanged(x, y, c);
+        }
+    }
+
+    /**
+     * Returns the changes made since a version, to bring another World with the level of that
+     * version up to date.
+     *
+     * @param fromVersion a version given by getVersion.
+     * @return the changes or null if they're no longer in the journal, or the level has been
+     *         replaced by reInit since.
+     */
+    public CellChanges getChangesSince(int fromVersion) {
+        if (fromVersion < journalVersion || fromVersion > version) {
+            return null;
+        }
+        int first = fromVersion - journalVersion;
+        return new CellChanges(width, height, fromVersion, version,
+                Arrays.copyOfRange(journalXs, first, journalSize), Arrays.copyOfRange(journalYs, first, journalSize),
+                Arrays.copyOfRange(journalChars, first, journalSize));
+    }
+
+    /**
+     * Makes the changes of another World to this one, which must have had the same level as the
+     * other at the version the changes start from.
+     *
+     * @param changes given by getChangesSince of the other World.
+     * @throws IllegalArgumentException if the changes are for a level of another size.
+     */
+    public void applyChanges(CellChanges changes) {
+        if (changes.getWidth() != width || changes.getHeight() != height) {
+            throw new IllegalArgumentException("The changes are for a level of another size.");
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            setCharAtGridPos(changes.getX(i), changes.getY(i), changes.getChar(i));
+        }
+    }
+
+    /**
+     * Reverts the changes made since a version, in turn as changes of a new version.
+     *
+     * @param fromVersion a version given by getVersion.
+     * @return false if the changes are no longer in the journal, then nothing is reverted.
+     */
+    public boolean revertChangesSince(int fromVersion) {
+        if (fromVersion < journalVersion || fromVersion > version) {
+            return false;
+        }
+        // Copied first, reverting adds to the journal.
+        int first = fromVersion - journalVersion;
+        int[] xs = Arrays.copyOfRange(journalXs, first, journalSize);
+        int[] ys = Arrays.copyOfRange(journalYs, first, journalSize);
+        char[] oldChars = Arrays.copyOfRange(journalOldChars, first, journalSize);
+        for (int i = oldChars.length - 1; i >= 0; i--) {
+            setCharAtGridPos(xs[i], ys[i], oldChars[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a listener told about every changed cell.
+     * @param listener the listener.
+     */
+    public void addChangeListener(WorldChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener added with addChangeListener.
+     */
+    public void removeChangeListener(WorldChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Finds the cells with an entity char, row by row. Only the bitset of the entities is read,
+     * unless the level is read tile by tile.
+     *
+     * @return the x and y coordinates in grid of each cell, one after another.
+     */
+    public int[] getEntityPositions() {
+        int[] positions;
+        int count = 0;
+        if (tiles != null) {
+            positions = new int[16];
+            char[] row = new char[width];
+            for (int y = 0; y < height; y++) {
+                copyRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    if (Character.isLetter(row[x])) {
+                        if (count == positions.length) {
+                            positions = Arrays.copyOf(positions, count * 2);
+                        }
+                        positions[count++] = x;
+                        positions[count++] = y;
+                    }
+                }
+            }
+            return Arrays.copyOf(positions, count);
+        }
+        for (long word : entities) {
+            count += Long.bitCount(word);
+        }
+        positions = new int[count * 2];
+        count = 0;
+        for (int i = 0; i < entities.length; i++) {
+            for (long word = entities[i]; word != 0; word &= word - 1) {
+                int index = (i << 6) + Long.numberOfTrailingZeros(word);
+                positions[count++] = index % stride - 1;
+                positions[count++] = index / stride - 1;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Attaches a potentially visible set to the World if it was computed for its walls.
+     * @param visibleSet the set.
+     * @return true if the set matches the World and was attached.
+     */
+    public boolean setPotentiallyVisibleSet(PotentiallyVisibleSet visibleSet) {
+        int sightVersion = this.sightVersion;
+        if (!visibleSet.matches(this)) {
+            return false;
+        }
+        this.visibleSet = visibleSet;
+        if (this.sightVersion != sightVersion) { // Changed while matching, maybe from another thread.
+            this.visibleSet = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the potentially visible set of the level or null if there's none.
+     */
+    public PotentiallyVisibleSet getPotentiallyVisibleSet() {
+        return visibleSet;
+    }
+
+    /**
+     * Tells if one position can possibly be seen from another. Without a potentially visible
+     * set everything can.
+     *
+     * @param fromX coordinate looked from.
+     * @param fromY coordinate looked from.
+     * @param toX coordinate looked at.
+     * @param toY coordinate looked at.
+     * @return false only if the position looked at is surely not seen.
+     */
+    public boolean isPotentiallyVisible(int fromX, int fromY, int toX, int toY) {
+        PotentiallyVisibleSet visibleSet = this.visibleSet;
+        return visibleSet == null || visibleSet.isVisible(fromX >> GRID_SHIFT, fromY >> GRID_SHIFT,
+                toX >> GRID_SHIFT, toY >> GRID_SHIFT);
+    }
+
+    /**
+     * Tells if the walls have changed. The renderer uses it to reuse what it has drawn.
+     * @return a number increased every time the level is changed, by one for each changed cell.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Tells if the entities have moved.
+     * @return a number changed every time markEntitiesChanged is called.
+     */
+    public int getEntityVersion() {
+        return entityVersion;
+    }
+
+    /**
+     * Called when an entity other than the viewer has moved or turned.
+     */
+    public void markEntitiesChanged() {
+        entityVersion++;
     }
 
     /**
@@ -144,6 +553,7 @@ public class World implements ContainsSettings {
      */
     public void updateSettings(Settings settings) {
         GRID_SIZE = settings.get("GRID_SIZE");
+        GRID_SHIFT = Integer.numberOfTrailingZeros(GRID_SIZE);
     }
 
     /**
@@ -152,7 +562,7 @@ public class World implements ContainsSettings {
      * @return the snapped coordinate.
      */
     public int snap(int position) {
-        return position / GRID_SIZE * GRID_SIZE;
+        return position >> GRID_SHIFT << GRID_SHIFT;
     }
 
     /**
@@ -160,12 +570,12 @@ public class World implements ContainsSettings {
      */
     public void fillOuterWalls() {
         for (int x = 0; x < width; x++) {
-            levelMatrix[0][x] = '1';
-            levelMatrix[height - 1][x] = '1';
+            setCharAtGridPos(x, 0, (char) BORDER);
+            setCharAtGridPos(x, height - 1, (char) BORDER);
         }
         for (int y = 0; y < height; y++) {
-            levelMatrix[y][0] = '1';
-            levelMatrix[y][width - 1] = '1';
+            setCharAtGridPos(0, y, (char) BORDER);
+            setCharAtGridPos(width - 1, y, (char) BORDER);
         }
     }
 
@@ -179,4 +589,174 @@ public class World implements ContainsSettings {
         // Outer walls are outside the world.
         return !(x < 1 || x > width - 2 || y < 1 || y > height - 2);
     }
+
+    /**
+     * Allocates the cells of a level of the given size and fills the border.
+     */
+    private void allocate(int width, int height) {
+        closeTiles();
+        this.width = width;
+        this.height = height;
+        stride = width + 2;
+        cells = new byte[stride * (height + 2)];
+        walls = new long[(cells.length + 63) >>> 6];
+        entities = new long[walls.length];
+        for (int x = -1; x <= width; x++) {
+            setCell(index(x, -1), BORDER);
+            setCell(index(x, height), BORDER);
+        }
+        for (int y = 0; y < height; y++) {
+            setCell(index(-1, y), BORDER);
+            setCell(index(width, y), BORDER);
+        }
+    }
+
+    /**
+     * Computes the wall distances of the given part of the cells, including the border. Walls
+     * outside the part are not seen, so only cells at least MAX_WALL_DISTANCE inside the edges
+     * of the part are sure to be right, unless the edge is the edge of the cells.
+     * <p>
+     * Two passes, each taking the distance from the neighbours already visited, give the
+     * distance counted with diagonal steps.
+     * @return the distances of the part row by row.
+     */
+    private byte[] computeWallDistances(int firstColumn, int firstRow, int columns, int rows) {
+        byte[] distances = new byte[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            int index = (firstRow + row) * stride + firstColumn;
+            for (int column = 0; column < columns; column++, index++) {
+                int i = row * columns + column;
+                int distance = 0;
+                if (!isWall(index)) {
+                    distance = MAX_WALL_DISTANCE;
+                    if (column > 0) {
+                        distance = Math.min(distance, distances[i - 1] + 1);
+                    }
+                    if (row > 0) {
+                        int above = i - columns;
+                        distance = Math.min(distance, distances[above] + 1);
+                        if (column > 0) {
+                            distance = Math.min(distance, distances[above - 1] + 1);
+                        }
+                        if (column < columns - 1) {
+                            distance = Math.min(distance, distances[above + 1] + 1);
+                        }
+                    }
+                }
+                distances[i] = (byte) distance;
+            }
+        }
+        for (int row = rows - 1; row >= 0; row--) {
+            for (int column = columns - 1; column >= 0; column--) {
+                int i = row * columns + column;
+                int distance = distances[i];
+                if (column < columns - 1) {
+                    distance = Math.min(distance, distances[i + 1] + 1);
+                }
+                if (row < rows - 1) {
+                    int below = i + columns;
+                    distance = Math.min(distance, distances[below] + 1);
+                    if (column > 0) {
+                        distance = Math.min(distance, distances[below - 1] + 1);
+                    }
+                    if (column < columns - 1) {
+                        distance = Math.min(distance, distances[below + 1] + 1);
+                    }
+                }
+                distances[i] = (byte) distance;
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Computes the wall distances again around a changed cell. Only cells up to
+     * MAX_WALL_DISTANCE away can change, and their walls are at most that far from them.
+     * @param column of the changed cell, including the border.
+     * @param row of the changed cell, including the border.
+     */
+    private void updateWallDistances(int column, int row) {
+        int reach = 2 * MAX_WALL_DISTANCE;
+        int firstColumn = Math.max(column - reach, 0);
+        int firstRow = Math.max(row - reach, 0);
+        int columns = Math.min(column + reach + 1, stride) - firstColumn;
+        int rows = Math.min(row + reach + 1, height + 2) - firstRow;
+        byte[] distances = computeWallDistances(firstColumn, firstRow, columns, rows);
+        int endColumn = Math.min(column + MAX_WALL_DISTANCE + 1, stride);
+        int endRow = Math.min(row + MAX_WALL_DISTANCE + 1, height + 2);
+        for (int y = Math.max(row - MAX_WALL_DISTANCE, 0); y < endRow; y++) {
+            for (int x = Math.max(column - MAX_WALL_DISTANCE, 0); x < endColumn; x++) {
+                wallDistances[y * stride + x] = distances[(y - firstRow) * columns + x - firstColumn];
+            }
+        }
+    }
+
+    /**
+     * Adds a change to the journal, dropping the oldest half if it's full.
+     */
+    private void record(int x, int y, char oldChar, char c) {
+        if (journalSize == journalChars.length) {
+            if (journalSize == MAX_JOURNAL) {
+                int dropped = journalSize / 2;
+                journalSize -= dropped;
+                journalVersion += dropped;
+                System.arraycopy(journalXs, dropped, journalXs, 0, journalSize);
+                System.arraycopy(journalYs, dropped, journalYs, 0, journalSize);
+                System.arraycopy(journalOldChars, dropped, journalOldChars, 0, journalSize);
+                System.arraycopy(journalChars, dropped, journalChars, 0, journalSize);
+            } else {
+                int capacity = Math.min(Math.max(journalSize * 2, 64), MAX_JOURNAL);
+                journalXs = Arrays.copyOf(journalXs, capacity);
+                journalYs = Arrays.copyOf(journalYs, capacity);
+                journalOldChars = Arrays.copyOf(journalOldChars, capacity);
+                journalChars = Arrays.copyOf(journalChars, capacity);
+            }
+        }
+        journalXs[journalSize] = x;
+        journalYs[journalSize] = y;
+        journalOldChars[journalSize] = oldChar;
+        journalChars[journalSize] = c;
+        journalSize++;
+    }
+
+    /**
+     * Empties the journal when the level is replaced, the changes so far can't be applied to it.
+     */
+    private void clearJournal() {
+        journalVersion = version;
+        journalSize = 0;
+    }
+
+    private static boolean isEntity(byte c) {
+        return Character.isLetter((char) c);
+    }
+
+    private boolean isWall(int index) {
+        return (walls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void closeTiles() {
+        if (tiles != null) {
+            tiles.close();
+            tiles = null;
+        }
+    }
+
+    private int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    private void setCell(int index, byte c) {
+        cells[index] = c;
+        if (c != '0' && !isEntity(c)) {
+            walls[index >>> 6] |= 1L << index;
+        } else {
+            walls[index >>> 6] &= ~(1L << index);
+        }
+        if (isEntity(c)) {
+            entities[index >>> 6] |= 1L << index;
+        } else {
+            entities[index >>> 6] &= ~(1L << index);
+        }
+    }
 }
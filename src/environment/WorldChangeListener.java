@@ -0,0 +1,19 @@
+package environment;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * An interface to be used by the World for telling about changed cells.
+ */
+public interface WorldChangeListener {
+    /** Called after a cell of the World has been changed, on the thread that changed it.
+     *
+     * @param x coordinate in grid.
+     * @param y coordinate in grid.
+     * @param c the new char of the cell.
+     */
+    public void cellChanged(int x, int y, char c);
+}
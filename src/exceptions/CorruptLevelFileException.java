@@ -6,10 +6,40 @@ package exceptions;
  */
 
 public class CorruptLevelFileException extends Exception {
+    private final int line;
+    private final int column;
+
     public CorruptLevelFileException() {
-        super();
+        this(null);
     }
     public CorruptLevelFileException(String m) {
         super(m);
+        line = 0;
+        column = 0;
+    }
+
+    /**
+     * @param m what's wrong.
+     * @param line the line of the level file where it's wrong, from 1.
+     * @param column the column of the level file where it's wrong, from 1.
+     */
+    public CorruptLevelFileException(String m, int line, int column) {
+        super("Line " + line + ", column " + column + ": " + m);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @return the line where the level file is corrupt or 0 if not known.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column where the level file is corrupt or 0 if not known.
+     */
+    public int getColumn() {
+        return column;
     }
 }
@@ -1,9 +1,11 @@
 package leveleditor;
 
 import controllers.FileController;
+import environment.CellChanges;
 import environment.Entity;
 import environment.EntityFactory;
 import environment.World;
+import environment.WorldChangeListener;
 import exceptions.CorruptLevelFileException;
 import exceptions.ViewerNotFoundException;
 import racaengine.RaCaEngine;
@@ -25,9 +27,11 @@ import java.io.IOException;
 public class LevelEditor {
     private RaCaEngine engine;
     private Thread engineThread;
-    private SwingWorker<Void, Void> worker;
     private final LevelEditorGUI gui;
     private World world;
+    private World testWorld; // Run by the engine, kept in sync with the world by its changes.
+    private int testedVersion; // The version of the world the testWorld was synced to.
+    private int testStartVersion; // The version of the testWorld when its test run started.
     private int LEVEL_NUMBER;
     private boolean engineRunning;
     private int viewerPositionX; // Tells where the viewer is situated.
@@ -57,9 +61,6 @@ public class LevelEditor {
                 int gridY = viewer.y / World.GRID_SIZE;
                 if (x != gridX || y != gridY) { // Can't place walls on viewer.
                     world.setCharAtGridPos(x, y, objectName.charAt(4));
-                    if (engineRunning) {
-                        engine.getWorld().setCharAtGridPos(x, y, objectName.charAt(4));
-                    }
                 }
 
             } else if (objectName.startsWith("delete")) {
@@ -68,9 +69,6 @@ public class LevelEditor {
                 }
                 // Delete object at position.
                 world.setCharAtGridPos(x, y, '0');
-                if (engineRunning) {
-                    engine.getWorld().setCharAtGridPos(x, y, '0');
-                }
 
             } else if (objectName.startsWith("viewer")) {
                 // Clear the last viewer position.
@@ -96,7 +94,7 @@ public class LevelEditor {
      */
     public void saveLevel() {
         try {
-            updateViewerPos(world.getLevelMatrix());
+            updateViewerPos();
             if (viewerPositionX == -1) { // if viewer missing.
                 JOptionPane.showMessageDialog(gui, "Viewer missing from level. Can't save");
                 return;
@@ -114,16 +112,28 @@ public class LevelEditor {
      * Launches the engine in the current level.
      */
     public void testLevel() {
+        updateViewerPos();
+        if (viewerPositionX == -1) {
+            JOptionPane.showMessageDialog(gui, "No viewer found.");
+            return;
+        }
+        waitForEngine(); // The previous test run must not change the testWorld any more.
         try {
-            engine.changeWorld(new World(world.copyLevelMatrix()));
+            syncTestWorld();
+            engine.changeWorld(testWorld);
         } catch (ViewerNotFoundException e) {
             JOptionPane.showMessageDialog(gui, "No viewer found.");
             return;
+        } catch (CorruptLevelFileException e) {
+            JOptionPane.showMessageDialog(gui, "Level file couldn't be read again.");
+            return;
         }
+        engine.start(); // Before the thread, so a stop coming before it runs isn't lost.
         engineRunning = true;
         engine.setVisible(true);
         gui.engineRun();
-        worker.execute();
+        engineThread = new Thread(engine, "Engine");
+        engineThread.start();
     }
 
     /**
@@ -131,13 +141,15 @@ public class LevelEditor {
      */
     public void loadLevel() {
         try {
-            char[][] levelMatrix = FileController.loadWorld(gui);
-            // Find the viewer in the matrix and save it's position.
-            if (levelMatrix == null) {
+            World loadedWorld = FileController.openWorld(gui);
+            if (loadedWorld == null) {
                 return;
             }
-            updateViewerPos(levelMatrix);
-            world.reInit(levelMatrix);
+            world.reInit(loadedWorld);
+            // Find the viewer in the level and save it's position.
+            updateViewerPos();
+        } catch (ViewerNotFoundException e) {
+            // Caught again when testing the level.
         } catch (CorruptLevelFileException e) {
             JOptionPane.showMessageDialog(gui, "Corrupt level file. A new one will be created.");
             newLevel(1, 10, 10);
@@ -184,9 +196,8 @@ public class LevelEditor {
     private void init() {
         LEVEL_NUMBER = 1;
         try {
-            char[][] levelMatrix = FileController.loadWorld("levels/" + LEVEL_NUMBER + ".lvl");
-            world = new World(levelMatrix);
-            updateViewerPos(levelMatrix);
+            world = FileController.openWorld("levels/" + LEVEL_NUMBER + ".lvl");
+            updateViewerPos();
 
         } catch (CorruptLevelFileException e) {
             JOptionPane.showMessageDialog(gui, "Corrupt level file. A new one will be created.");
@@ -196,25 +207,25 @@ public class LevelEditor {
         } catch (ViewerNotFoundException e) {
             // Do nothing the viewer missing will be caught again when testing the level.
         } finally {
+            // Edits of walls are made to a running test too. Entities are added to it by mapViewClick.
+            world.addChangeListener(new WorldChangeListener() {
+                public void cellChanged(int x, int y, char c) {
+                    if (engineRunning && !Character.isLetter(c)) {
+                        engine.getWorld().setCharAtGridPos(x, y, c);
+                    }
+                }
+            });
             // Create the engine and assign it to a background thread.
             engine = new RaCaEngine();
-            engineThread = new Thread(engine);
             engineRunning = false;
             engine.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
             engine.addWindowListener(new WindowAdapter() {
                 public void windowClosing(WindowEvent e) {
-                    worker.cancel(true);
+                    engine.stop();
                     gui.engineStopped();
                     engineRunning = false;
                 }
             });
-            worker = new SwingWorker<Void, Void>() {
-                @Override
-                protected Void doInBackground() throws Exception {
-                    engineThread.run();
-                    return null;
-                }
-            };
 
             // Show the GUI.
             gui.init(world);
@@ -222,14 +233,41 @@ public class LevelEditor {
         }
     }
 
-    private void updateViewerPos(char[][] levelMatrix) {
-        for (int y = 0; y < levelMatrix.length; y++) {
-            for (int x = 0; x < levelMatrix[0].length; x++) {
-                if (levelMatrix[y][x] == 'v') {
-                    viewerPositionX = x;
-                    viewerPositionY = y;
-                    return;
-                }
+    /**
+     * Brings the testWorld up to date with the world. The changes of the last test run are
+     * reverted and the changes made to the world since are applied. The world is copied only
+     * the first time or when the changes are no longer in the journals.
+     */
+    private void syncTestWorld() throws CorruptLevelFileException {
+        CellChanges changes = (testWorld == null) ? null : world.getChangesSince(testedVersion);
+        if (changes != null && testWorld.revertChangesSince(testStartVersion)) {
+            testWorld.applyChanges(changes);
+        } else {
+            testWorld = world.copy();
+        }
+        testedVersion = world.getVersion();
+        testStartVersion = testWorld.getVersion();
+    }
+
+    private void waitForEngine() {
+        if (engineThread == null) {
+            return;
+        }
+        engine.stop();
+        try {
+            engineThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void updateViewerPos() {
+        int[] positions = world.getEntityPositions();
+        for (int i = 0; i < positions.length; i += 2) {
+            if (world.charAtGridPos(positions[i], positions[i + 1]) == 'v') {
+                viewerPositionX = positions[i];
+                viewerPositionY = positions[i + 1];
+                return;
             }
         }
         // Mark viewer not found.
@@ -51,6 +51,8 @@ public class LevelEditorGUI extends JFrame implements MouseListener, ContainsSet
             helpInformationBuffer.append("\nLook up: ");
             helpInformationBuffer.append(KeyEvent.getKeyText(settings.get("KEY_LOOK_UP")));
             helpInformationBuffer.append("\nLook down: ").append(KeyEvent.getKeyText(settings.get("KEY_LOOK_DOWN")));
+            helpInformationBuffer.append("\nSave profile: ");
+            helpInformationBuffer.append(KeyEvent.getKeyText(settings.get("KEY_DUMP_PROFILE")));
 
             JOptionPane.showMessageDialog(null, helpInformationBuffer.toString());
         }
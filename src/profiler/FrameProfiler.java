@@ -0,0 +1,108 @@
+package profiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Collects the time spent in each stage of the game loop and the renderer into rolling
+ * histograms. Uses the singleton pattern so every part of the engine records into the same
+ * profile. Stages are looked up by name once and recorded by index, which doesn't allocate.
+ */
+public class FrameProfiler {
+    private static final FrameProfiler singleton = new FrameProfiler();
+    private static final int WINDOW_SIZE = 1024; // Latest samples kept for each stage.
+    private static final double[] PERCENTILES = {50, 95, 99};
+    private final ArrayList<String> stageNames;
+    private volatile RollingHistogram[] histograms; // Copied on write, so recording needs no locks.
+
+    /**
+     * Returns a singleton instance of the FrameProfiler.
+     * @return The one and only FrameProfiler.
+     */
+    public static FrameProfiler getInstance() {
+        return singleton;
+    }
+
+    /**
+     * Finds the stage with the given name. The stage is created if it doesn't exist.
+     * @param name of the stage, for example the class name of a RendererComponent.
+     * @return the index used to record the stage.
+     */
+    public synchronized int getStage(String name) {
+        int stage = stageNames.indexOf(name);
+        if (stage == -1) {
+            stageNames.add(name);
+            stage = stageNames.size() - 1;
+            RollingHistogram[] newHistograms = Arrays.copyOf(histograms, stageNames.size());
+            newHistograms[stage] = new RollingHistogram(WINDOW_SIZE);
+            histograms = newHistograms;
+        }
+        return stage;
+    }
+
+    /**
+     * Records the duration of a stage.
+     * @param stage index given by getStage.
+     * @param nanoseconds the time spent in the stage.
+     */
+    public void record(int stage, long nanoseconds) {
+        histograms[stage].record(nanoseconds);
+    }
+
+    /**
+     * @param stage index given by getStage.
+     * @return the histogram of the stage.
+     */
+    public RollingHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    /**
+     * Formats the percentiles of every stage, one stage per line, in milliseconds.
+     * @return the lines of the report.
+     */
+    public synchronized String[] getReport() {
+        String[] lines = new String[stageNames.size()];
+        for (int stage = 0; stage < lines.length; stage++) {
+            RollingHistogram histogram = histograms[stage];
+            StringBuilder line = new StringBuilder(stageNames.get(stage)).append(':');
+            for (double percentile : PERCENTILES) {
+                line.append(" p").append((int) percentile).append(' ')
+                        .append(toMS(histogram.getPercentile(percentile)));
+            }
+            line.append(" max ").append(toMS(histogram.getMax()));
+            lines[stage] = line.toString();
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the report to the given Writer.
+     * @param writer where the report is written.
+     * @throws IOException
+     */
+    public void dump(Writer writer) throws IOException {
+        writer.write("# Stage: percentiles and maximum of the latest " + WINDOW_SIZE + " samples in ms.\n");
+        for (String line : getReport()) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private static String toMS(long nanoseconds) {
+        return String.format("%.3f", nanoseconds / 1000000.0);
+    }
+
+    private FrameProfiler() {
+        stageNames = new ArrayList<String>();
+        histograms = new RollingHistogram[0];
+    }
+}
@@ -0,0 +1,108 @@
+package profiler;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * A histogram of the latest samples. Samples are counted in logarithmic buckets with eight
+ * buckets per power of two, so percentiles are accurate to 12.5%. Recording a sample never
+ * allocates. The viewports of a split screen record the same stages from several threads.
+ */
+public class RollingHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private final long[] samples; // Ring buffer of the latest samples.
+    private final int[] bucketCounts;
+    private int next; // Where the next sample goes in the ring buffer.
+    private int count;
+
+    /**
+     * Constructor.
+     * @param windowSize how many of the latest samples are kept.
+     */
+    public RollingHistogram(int windowSize) {
+        samples = new long[windowSize];
+        bucketCounts = new int[BUCKETS];
+    }
+
+    /**
+     * Adds a sample. The oldest sample is dropped if the window is full.
+     * @param value a non-negative sample.
+     */
+    public synchronized void record(long value) {
+        value = Math.max(value, 0);
+        if (count == samples.length) {
+            bucketCounts[bucket(samples[next])]--;
+        } else {
+            count++;
+        }
+        samples[next] = value;
+        bucketCounts[bucket(value)]++;
+        next = (next + 1) % samples.length;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the value under which the given percentage of the samples are, or 0 if empty.
+     */
+    public synchronized long getPercentile(double percentile) {
+        long wanted = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= wanted && seen > 0) {
+                return Math.min(upperBound(bucket), getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the largest sample in the window.
+     */
+    public synchronized long getMax() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return the latest sample or 0 if empty.
+     */
+    public synchronized long getLatest() {
+        if (count == 0) {
+            return 0;
+        }
+        return samples[(next + samples.length - 1) % samples.length];
+    }
+
+    /**
+     * @return the number of samples in the window.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
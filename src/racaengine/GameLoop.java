@@ -0,0 +1,123 @@
+package racaengine;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Schedules the engine's logic ticks at a fixed rate and the frames at a maximum rate. The
+ * thread sleeps between ticks and frames instead of spinning. After a hitch a limited number
+ * of missed ticks are caught up before drawing, the rest are skipped.
+ */
+public class GameLoop {
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private final Listener listener;
+    private volatile long nsPerTick;
+    private volatile long nsPerFrame;
+    private volatile boolean running;
+    private volatile Thread loopThread;
+
+    /**
+     * What the GameLoop drives.
+     */
+    public interface Listener {
+        /**
+         * Updates the engine logic by one tick.
+         */
+        public void tick();
+
+        /**
+         * Draws a frame.
+         * @param interpolation how far the time is between the last and the next tick, from 0 to 1.
+         */
+        public void frame(double interpolation);
+    }
+
+    /**
+     * Constructor.
+     * @param listener gets the ticks and frames.
+     */
+    public GameLoop(Listener listener) {
+        this.listener = listener;
+        setRates(25, 50);
+    }
+
+    /**
+     * Sets the tick length and the frame rate. Can be called while the loop is running.
+     * @param msPerTick the length of one tick in milliseconds.
+     * @param maxFPS the maximum number of frames per second.
+     */
+    public void setRates(int msPerTick, int maxFPS) {
+        nsPerTick = msPerTick * 1000000L;
+        nsPerFrame = 1000000000L / maxFPS;
+    }
+
+    /**
+     * Arms the loop for run. Called before the thread running the loop is started, so that a
+     * stop coming before the thread gets to run isn't lost.
+     */
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Runs the loop in the calling thread until stop is called or the thread is interrupted.
+     * Returns at once unless start has been called since the last stop.
+     */
+    public void run() {
+        loopThread = Thread.currentThread();
+        long nextTickNS = System.nanoTime() + nsPerTick;
+        long nextFrameNS = System.nanoTime();
+        while (running && !loopThread.isInterrupted()) {
+            // Update engine logic.
+            int ticks = 0;
+            while (System.nanoTime() >= nextTickNS && ticks < MAX_CATCH_UP_TICKS) {
+                listener.tick();
+                nextTickNS += nsPerTick;
+                ticks++;
+            }
+            long currentNS = System.nanoTime();
+            if (currentNS >= nextTickNS) { // Too far behind, skip the missed ticks.
+                nextTickNS = currentNS + nsPerTick;
+            }
+            // Draw screen.
+            if (currentNS >= nextFrameNS) {
+                listener.frame(getInterpolation(currentNS, nextTickNS));
+                nextFrameNS += nsPerFrame;
+                if (nextFrameNS < currentNS) { // Don't draw extra frames to catch up.
+                    nextFrameNS = currentNS + nsPerFrame;
+                }
+            }
+            long sleepNS = Math.min(nextTickNS, nextFrameNS) - System.nanoTime();
+            if (sleepNS > 0) {
+                LockSupport.parkNanos(this, sleepNS);
+            }
+        }
+        running = false;
+    }
+
+    /**
+     * Stops the loop after the current tick or frame.
+     */
+    public void stop() {
+        running = false;
+        Thread thread = loopThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return true if the loop is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private double getInterpolation(long currentNS, long nextTickNS) {
+        double interpolation = (currentNS + nsPerTick - nextTickNS) / (double) nsPerTick;
+        return Math.min(Math.max(interpolation, 0), 1);
+    }
+}
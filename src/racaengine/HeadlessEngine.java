@@ -0,0 +1,115 @@
+package racaengine;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import controllers.FileController;
+import controllers.PhysicsController;
+import controllers.SettingsController;
+import environment.Entity;
+import environment.EntityFactory;
+import environment.World;
+import exceptions.CorruptLevelFileException;
+import exceptions.CorruptSettingsException;
+import exceptions.ViewerNotFoundException;
+import profiler.FrameProfiler;
+import renderer.Renderer;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Runs the engine without a window. Renders offscreen as fast as possible, which makes it
+ * usable for measuring render throughput and creating level thumbnails on machines without
+ * a display.
+ */
+public class HeadlessEngine {
+    private final PhysicsController physicsController;
+    private final Renderer renderer;
+    private final Entity viewer;
+
+    /**
+     * Loads the settings and the level without touching any GUI classes.
+     * @param levelFileName the level to be rendered.
+     * @throws CorruptLevelFileException
+     * @throws ViewerNotFoundException
+     */
+    public HeadlessEngine(String levelFileName) throws CorruptLevelFileException, ViewerNotFoundException {
+        try {
+            SettingsController.getInstance().updateSettings(FileController.loadSettings());
+        } catch (CorruptSettingsException e) {
+            System.out.println("Corrupt settings file. Loading defaults.");
+            SettingsController.getInstance().updateSettings();
+        }
+        World world = FileController.openWorld(levelFileName);
+        physicsController = new PhysicsController(world);
+        EntityFactory entityFactory = new EntityFactory(world, physicsController);
+        ArrayList<Entity> entities = entityFactory.fill();
+        viewer = entityFactory.getViewer();
+        renderer = new Renderer(world);
+        renderer.setEntities(entities, viewer);
+    }
+
+    /**
+     * Renders the given number of frames. The viewer turns a little every frame and the
+     * physics are updated between the frames. Every frame is rendered in full, as the rays
+     * of a turning viewer would otherwise be mostly reused from the previous frame.
+     * @param frames how many frames to render.
+     * @return the time in nanoseconds spent rendering.
+     */
+    public long run(int frames) {
+        long renderingNS = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            viewer.directionChange = viewer.DIR_CHANGE_SPEED;
+            physicsController.update();
+            renderer.invalidate();
+            long startNS = System.nanoTime();
+            renderer.render(viewer.x, viewer.y, viewer.direction, viewer.height);
+            renderingNS += System.nanoTime() - startNS;
+        }
+        return renderingNS;
+    }
+
+    /**
+     * @return the Renderer drawing the frames.
+     */
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Usage: HeadlessEngine [frames] [level file] [output png]
+     * @param args
+     */
+    public static void main(String[] args) {
+        int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        String levelFileName = (args.length > 1) ? args[1] : "levels/1.lvl";
+        try {
+            HeadlessEngine engine = new HeadlessEngine(levelFileName);
+            long renderingNS = engine.run(frames);
+            System.out.println("Rendered " + frames + " frames in " + renderingNS / 1000000 + " ms ("
+                    + (int) (frames * 1e9 / Math.max(renderingNS, 1)) + " FPS).");
+            for (String line : FrameProfiler.getInstance().getReport()) {
+                System.out.println(line);
+            }
+            if (args.length > 2) {
+                ImageIO.write(engine.getRenderer().getImage(), "png", new File(args[2]));
+            }
+        } catch (CorruptLevelFileException e) {
+            System.out.println("Corrupt level file. Terminating");
+            e.printStackTrace();
+            System.exit(1);
+        } catch (ViewerNotFoundException e) {
+            System.out.println("Viewer not found in level. Terminating");
+            e.printStackTrace();
+            System.exit(1);
+        } catch (IOException e) {
+            System.out.println("Image couldn't be saved.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -12,27 +12,35 @@ import environment.World;
 import exceptions.CorruptLevelFileException;
 import exceptions.CorruptSettingsException;
 import exceptions.ViewerNotFoundException;
+import profiler.FrameProfiler;
+import renderer.ActiveRendererView;
+import renderer.EngineView;
 import renderer.RendererView;
+import renderer.SplitScreenView;
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 
-import static java.lang.System.currentTimeMillis;
-
 /**
  * The main class for the RaCa-Engine.
  */
-public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
-    private static int MS_PER_TICK;
-    private static int MS_PER_FRAME;
-    private InputController inputController;
+public class RaCaEngine extends JFrame implements ContainsSettings, Runnable, GameLoop.Listener {
+    private static int KEY_DUMP_PROFILE;
+    private static boolean ACTIVE_RENDERING;
+    private static int VIEWPORTS;
+    private InputController[] inputControllers; // One for each seat.
     private PhysicsController physicsController;
-    private RendererView rendererView;
+    private EngineView rendererView;
     private World world;
     private Entity viewer;
     private ArrayList<Entity> entityList;
+    private final GameLoop gameLoop = new GameLoop(this);
+    private final FrameProfiler profiler = FrameProfiler.getInstance();
+    private final int inputStage = profiler.getStage("InputController");
+    private final int physicsStage = profiler.getStage("PhysicsController");
 
     /**
      * Creates the engines window and initializes everything.
@@ -52,17 +60,24 @@ public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                inputController.keyPressed(e);
+                if (e.getKeyCode() == KEY_DUMP_PROFILE) {
+                    FileController.saveProfile(FrameProfiler.getInstance());
+                }
+                for (InputController inputController : inputControllers) {
+                    inputController.keyPressed(e);
+                }
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
-                inputController.keyReleased(e);
+                for (InputController inputController : inputControllers) {
+                    inputController.keyReleased(e);
+                }
             }
         });
         // Load the first level.
         try {
-            world = new World(FileController.loadWorld("levels/1.lvl"));
+            world = FileController.openWorld("levels/1.lvl");
             changeWorld(world);
 
         } catch (CorruptLevelFileException e) {
@@ -77,28 +92,40 @@ public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
     }
 
     /**
-     * Starts the engine. Only possible to stop if suspending the thread it's running in.
+     * Arms the engine to be run. Must be called before run, and before the thread calling run
+     * is started.
+     */
+    public void start() {
+        gameLoop.start();
+    }
+
+    /**
+     * Runs the engine. Returns when stop is called or the running thread is interrupted.
      */
     public void run() {
-        long currentMS = currentTimeMillis();
-        long nextTickAtMS = currentMS + MS_PER_TICK;
-        long lastFrameMS = currentMS;
-        double interpolation;
-
-        while (true) {
-            // Update engine logic.
-            if (currentTimeMillis() > nextTickAtMS) {
-                inputController.update();
-                physicsController.update();
-                nextTickAtMS += MS_PER_TICK;
-            }
-            // Draw screen.
-            if (currentTimeMillis() - lastFrameMS > MS_PER_FRAME) {
-                lastFrameMS = currentTimeMillis();
-                interpolation = getInterpolation(nextTickAtMS);
-                rendererView.update(interpolation);
-            }
+        gameLoop.run();
+    }
+
+    /**
+     * Stops the engine started with run.
+     */
+    public void stop() {
+        gameLoop.stop();
+    }
+
+    public void tick() {
+        long startNS = System.nanoTime();
+        for (InputController inputController : inputControllers) {
+            inputController.update();
         }
+        long inputDoneNS = System.nanoTime();
+        physicsController.update();
+        profiler.record(inputStage, inputDoneNS - startNS);
+        profiler.record(physicsStage, System.nanoTime() - inputDoneNS);
+    }
+
+    public void frame(double interpolation) {
+        rendererView.update(interpolation);
     }
 
     /**
@@ -111,8 +138,13 @@ public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
 
 
     public static void main(String[] Args) {
+        if (GraphicsEnvironment.isHeadless()) { // No display, so render offscreen.
+            HeadlessEngine.main(Args);
+            return;
+        }
         RaCaEngine racaEngine = new RaCaEngine();
         racaEngine.setVisible(true);
+        racaEngine.start();
         racaEngine.run();
     }
 
@@ -132,16 +164,51 @@ public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
         entityList = entityFactory.fill();
         viewer = entityFactory.getViewer();
         if (rendererView != null) {
-            this.remove(rendererView);
+            rendererView.dispose();
+            this.remove((Component) rendererView);
+        }
+        Entity[] viewers = createSeatViewers(viewer);
+        if (viewers.length > 1) {
+            rendererView = new SplitScreenView(newWorld, viewers, entityList);
+        } else if (ACTIVE_RENDERING) {
+            rendererView = new ActiveRendererView(newWorld, viewer, entityList);
+        } else {
+            rendererView = new RendererView(newWorld, viewer, entityList);
+        }
+        add((Component) rendererView);
+        inputControllers = new InputController[viewers.length];
+        for (int i = 0; i < viewers.length; i++) {
+            inputControllers[i] = new InputController(viewers[i], i + 1);
         }
-        rendererView = new RendererView(newWorld, viewer);
-        add(rendererView);
-        inputController = new InputController(viewer);
+    }
+
+    /**
+     * Creates a viewer for every other seat of a split screen at the level's viewer, each
+     * facing another way. The viewers are added to the entities.
+     * @param viewer the level's viewer, used by the first seat.
+     * @return the viewers of all seats.
+     */
+    private Entity[] createSeatViewers(Entity viewer) {
+        Entity[] viewers = new Entity[Math.min(Math.max(VIEWPORTS, 1), 4)];
+        viewers[0] = viewer;
+        for (int seat = 1; seat < viewers.length; seat++) {
+            Entity seatViewer = new Entity(Entity.Type.VIEWER);
+            seatViewer.x = viewer.x;
+            seatViewer.newX = viewer.x;
+            seatViewer.y = viewer.y;
+            seatViewer.newY = viewer.y;
+            seatViewer.direction = viewer.direction + seat * Math.PI / 2;
+            entityList.add(seatViewer); // Also moved by the PhysicsController.
+            viewers[seat] = seatViewer;
+        }
+        return viewers;
     }
 
     public void updateSettings(Settings settings) {
-        MS_PER_FRAME = 1000 / settings.get("MAX_FPS");
-        MS_PER_TICK = settings.get("MS_PER_TICK");
+        gameLoop.setRates(settings.get("MS_PER_TICK"), settings.get("MAX_FPS"));
+        KEY_DUMP_PROFILE = settings.get("KEY_DUMP_PROFILE");
+        ACTIVE_RENDERING = (settings.get("ACTIVE_RENDERING") == 1);
+        VIEWPORTS = settings.get("VIEWPORTS");
 
         pack(); // Resize window if resolution changed.
     }
@@ -162,7 +229,4 @@ public class RaCaEngine extends JFrame implements ContainsSettings, Runnable {
         return viewer;
     }
 
-    private double getInterpolation(long nextTickAt) {
-        return (currentTimeMillis() + MS_PER_TICK - nextTickAt) / (double) MS_PER_TICK;
-    }
 }
@@ -0,0 +1,208 @@
+package renderer;
+
+import controllers.ContainsSettings;
+import controllers.SettingsController;
+import environment.Entity;
+import environment.Settings;
+import environment.World;
+import profiler.FrameProfiler;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Renders on a dedicated render thread and shows the frames by page flipping through a
+ * BufferStrategy. Unlike RendererView nothing is drawn in paint(), so the frames don't wait
+ * for the Swing event dispatch thread and aren't coalesced by repaint(). With the FRAME_PIPELINE
+ * setting a FramePipeline renders the frames and the render thread only presents them.
+ */
+public class ActiveRendererView extends Canvas implements EngineView, ContainsSettings, Runnable {
+    private static final int BUFFERS = 2;
+    private boolean SHOW_FPS;
+    private boolean SHOW_PROFILE;
+    private final Renderer renderer;
+    private final FramePipeline pipeline;
+    private final Entity viewer;
+    private final Predictor predictor;
+    private final StatisticsOverlay statisticsOverlay;
+    private final int blitStage;
+    private final Thread renderThread;
+    private BufferStrategy bufferStrategy;
+    private BufferedImage compatibleFrame; // The frame in the screen's format, for scaling.
+    private boolean running;
+    private boolean frameRequested;
+    // The viewer's predicted position for the requested frame.
+    private int viewerX;
+    private int viewerY;
+    private double viewerDirection;
+    private int viewerHeight;
+
+    /**
+     * Constructor. Starts the render thread, which waits for frames to be requested with update.
+     * @param world the World to be used.
+     * @param viewer the Entity representing the point of view.
+     * @param entities the entities drawn as sprites.
+     */
+    public ActiveRendererView(World world, Entity viewer, ArrayList<Entity> entities) {
+        renderer = new Renderer(world);
+        renderer.setEntities(entities, viewer);
+        pipeline = new FramePipeline(renderer, null);
+        this.viewer = viewer;
+        predictor = new Predictor();
+        statisticsOverlay = new StatisticsOverlay();
+        blitStage = FrameProfiler.getInstance().getStage("Blit");
+        setIgnoreRepaint(true);
+        setFocusable(false); // Let the window get the key events.
+        SettingsController.getInstance().addListener(this);
+        running = true;
+        renderThread = new Thread(this, "Render thread");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Used by pack()
+     * @return the resolution of the engine.
+     */
+    public Dimension getPreferredSize() {
+        return new Dimension(renderer.getWidth(), renderer.getHeight());
+    }
+
+    /**
+     * Requests a frame from the render thread. A frame requested while the previous one
+     * is still being rendered replaces the earlier request.
+     * @param interpolation used in prediction.
+     */
+    public synchronized void update(double interpolation) {
+        predictor.predict(viewer, interpolation);
+        viewerX = predictor.getX();
+        viewerY = predictor.getY();
+        viewerDirection = predictor.getDirection();
+        viewerHeight = viewer.height;
+        if (pipeline.isEnabled()) {
+            pipeline.request(viewerX, viewerY, viewerDirection, viewerHeight);
+        } else {
+            frameRequested = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops the render thread.
+     */
+    public synchronized void dispose() {
+        running = false;
+        pipeline.dispose();
+        notifyAll();
+    }
+
+    /**
+     * The render thread's loop. Use update to request frames.
+     */
+    public void run() {
+        while (isRunning()) {
+            RenderTarget frame;
+            try {
+                frame = pipeline.isEnabled() ? pipeline.nextFrame() : renderRequestedFrame();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame != null && isDisplayable()) { // Can't flip pages before the window is shown.
+                long blitStartNS = System.nanoTime();
+                show(frame.image);
+                FrameProfiler.getInstance().record(blitStage, System.nanoTime() - blitStartNS);
+            }
+        }
+    }
+
+    /**
+     * Does nothing. The frames are drawn by the render thread.
+     * @param screen
+     */
+    public void paint(Graphics screen) {
+    }
+
+    public void updateSettings(Settings settings) {
+        SHOW_FPS = (settings.get("SHOW_FPS") == 1);
+        SHOW_PROFILE = (settings.get("SHOW_PROFILE") == 1);
+    }
+
+    private synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Waits for a frame to be requested and renders it on this thread.
+     * @return the rendered frame or null if stopped or the pipeline was enabled meanwhile.
+     */
+    private RenderTarget renderRequestedFrame() throws InterruptedException {
+        int x, y, height;
+        double direction;
+        synchronized (this) {
+            while (running && !frameRequested && !pipeline.isEnabled()) {
+                wait();
+            }
+            if (!frameRequested) {
+                return null;
+            }
+            frameRequested = false;
+            x = viewerX;
+            y = viewerY;
+            direction = viewerDirection;
+            height = viewerHeight;
+        }
+        if (!isDisplayable()) {
+            return null;
+        }
+        renderer.render(x, y, direction, height);
+        return renderer.getTarget();
+    }
+
+    private void show(BufferedImage buffer) {
+        if (bufferStrategy == null) {
+            createBufferStrategy(BUFFERS);
+            bufferStrategy = getBufferStrategy();
+        }
+        BufferedImage frame = toCompatible(buffer);
+        // The contents of the buffers can be lost at any time, for example when the display mode
+        // changes, so repeat until the frame got through.
+        do {
+            do {
+                Graphics2D screen = (Graphics2D) bufferStrategy.getDrawGraphics();
+                // Scaled up if rendered at a lower resolution.
+                screen.drawImage(frame, 0, 0, renderer.getWidth(), renderer.getHeight(), null);
+                // Drawn on screen to keep the frame clean for reuse.
+                statisticsOverlay.draw(screen, SHOW_FPS, SHOW_PROFILE);
+                screen.dispose();
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Copies the frame to an image in the screen's format. The copy is a plain blit, so the
+     * scaling to the screen doesn't convert the pixels' format on the way.
+     * @param buffer the rendered frame.
+     * @return the compatible copy of the frame.
+     */
+    private BufferedImage toCompatible(BufferedImage buffer) {
+        if (compatibleFrame == null || compatibleFrame.getWidth() != buffer.getWidth()
+                || compatibleFrame.getHeight() != buffer.getHeight()) {
+            compatibleFrame = getGraphicsConfiguration().createCompatibleImage(buffer.getWidth(),
+                    buffer.getHeight());
+        }
+        Graphics2D g = compatibleFrame.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(buffer, 0, 0, null);
+        g.dispose();
+        return compatibleFrame;
+    }
+}
@@ -0,0 +1,90 @@
+package renderer;
+
+import profiler.FrameProfiler;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Splits the screen into bands of columns and runs the given ColumnRendererComponents on each
+ * band in the render pool. Every band runs the components in order, so a band can be drawn as
+ * soon as its own rays are cast. The components write only to their own columns of the shared
+ * arrays in RendererCommon. The time of each component is summed over the bands, so in
+ * parallel it's the CPU time of all threads.
+ */
+public class ColumnBandRenderer implements RendererComponent {
+    private static final int BANDS_PER_THREAD = 4; // Evens out bands with more work than others.
+    private final ColumnRendererComponent[] components;
+    private final int[] componentStages; // FrameProfiler stage of each component.
+    private final AtomicLongArray componentNS; // Time of each component summed over the bands.
+
+    /**
+     * A band of columns. Halved until narrow enough.
+     */
+    private class Band extends RecursiveAction {
+        private final RendererCommon common;
+        private final int firstColumn;
+        private final int endColumn;
+        private final int bandWidth;
+
+        Band(RendererCommon common, int firstColumn, int endColumn, int bandWidth) {
+            this.common = common;
+            this.firstColumn = firstColumn;
+            this.endColumn = endColumn;
+            this.bandWidth = bandWidth;
+        }
+
+        @Override
+        protected void compute() {
+            if (endColumn - firstColumn <= bandWidth) {
+                updateBand(common, firstColumn, endColumn);
+            } else {
+                int middle = (firstColumn + endColumn) >>> 1;
+                invokeAll(new Band(common, firstColumn, middle, bandWidth),
+                        new Band(common, middle, endColumn, bandWidth));
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param components run in the given order for each band.
+     */
+    public ColumnBandRenderer(ColumnRendererComponent... components) {
+        this.components = components;
+        componentStages = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            componentStages[i] = FrameProfiler.getInstance().getStage(components[i].getClass().getSimpleName());
+        }
+        componentNS = new AtomicLongArray(components.length);
+    }
+
+    public void update(RendererCommon common) {
+        ForkJoinPool pool = common.renderPool;
+        if (pool == null) { // Single threaded.
+            updateBand(common, 0, common.RESOLUTION_X);
+        } else {
+            int bandWidth = Math.max(common.RESOLUTION_X / (pool.getParallelism() * BANDS_PER_THREAD), 1);
+            pool.invoke(new Band(common, 0, common.RESOLUTION_X, bandWidth));
+        }
+        common.updateFurthestWallTop();
+        FrameProfiler profiler = FrameProfiler.getInstance();
+        for (int i = 0; i < components.length; i++) {
+            profiler.record(componentStages[i], componentNS.getAndSet(i, 0));
+        }
+    }
+
+    private void updateBand(RendererCommon common, int firstColumn, int endColumn) {
+        for (int i = 0; i < components.length; i++) {
+            long startNS = System.nanoTime();
+            components[i].update(common, firstColumn, endColumn);
+            componentNS.addAndGet(i, System.nanoTime() - startNS);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package renderer;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * A RendererComponent whose work is independent for each screen column. Such components can
+ * be run on separate bands of columns in parallel.
+ */
+public interface ColumnRendererComponent extends RendererComponent {
+    /**
+     * Performs the component's task for the given columns only.
+     * @param common gives access to the global variables and some utility functions.
+     * @param firstColumn the first column to process.
+     * @param endColumn the column after the last one to process.
+     */
+    public void update(RendererCommon common, int firstColumn, int endColumn);
+}
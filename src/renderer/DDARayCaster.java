@@ -0,0 +1,170 @@
+package renderer;
+
+import environment.World;
+
+import static renderer.RendererCommon.HORIZONTAL_WALL;
+import static renderer.RendererCommon.VERTICAL_WALL;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * A RayCaster using a digital differential analyzer. Each ray walks the grid one cell at a time
+ * on integer grid coordinates, crossing whichever of the vertical or horizontal grid lines is
+ * closer, and stops at the first wall. Unlike RayCaster only one ray is cast per column and the
+ * hit point is exact, so there are no gaps at the grid corners.
+ * <p>
+ * In a cell far from the walls the ray skips the empty cells around it at once, using the
+ * World's wall distances. The distances to the grid lines are computed from the number of lines
+ * crossed instead of adding up, so the ray ends up exactly where it would have by stepping.
+ */
+public class DDARayCaster implements ColumnRendererComponent {
+    private static final int MIN_SKIPPED_CELLS = 6; // Fewer are crossed faster by stepping.
+
+    public void update(RendererCommon common) {
+        update(common, 0, common.RESOLUTION_X);
+        common.updateFurthestWallTop();
+    }
+
+    public void update(RendererCommon common, int firstColumn, int endColumn) {
+        World world = common.world;
+        // The viewer's position in grid units.
+        double positionX = common.viewerX / (double) World.GRID_SIZE;
+        double positionY = common.viewerY / (double) World.GRID_SIZE;
+        double directionX = Math.cos(common.viewerDirection);
+        double directionY = Math.sin(common.viewerDirection);
+        for (int i = firstColumn; i < endColumn; i++) {
+            // Rotate the column's ray to the viewer's direction.
+            double rayX = directionX * common.columnRaysX[i] - directionY * common.columnRaysY[i];
+            double rayY = directionY * common.columnRaysX[i] + directionX * common.columnRaysY[i];
+            castRay(common, world, positionX, positionY, rayX, rayY, i);
+        }
+    }
+
+    /**
+     * Casts one ray and stores the results for the column.
+     */
+    private void castRay(RendererCommon common, World world, double positionX, double positionY,
+                         double rayX, double rayY, int column) {
+        int gridX = (int) positionX;
+        int gridY = (int) positionY;
+        // Distance along the ray between two vertical or two horizontal grid lines.
+        double deltaX = (rayX == 0) ? Double.MAX_VALUE : Math.abs(1 / rayX);
+        double deltaY = (rayY == 0) ? Double.MAX_VALUE : Math.abs(1 / rayY);
+        int stepX;
+        int stepY;
+        // Distance along the ray to the first vertical or horizontal grid line.
+        double firstX;
+        double firstY;
+        if (rayX < 0) {
+            stepX = -1;
+            firstX = (positionX - gridX) * deltaX;
+        } else {
+            stepX = 1;
+            firstX = (gridX + 1 - positionX) * deltaX;
+        }
+        if (rayY < 0) {
+            stepY = -1;
+            firstY = (positionY - gridY) * deltaY;
+        } else {
+            stepY = 1;
+            firstY = (gridY + 1 - positionY) * deltaY;
+        }
+        // Grid lines crossed. Doubles hold them exactly and need no converting in the loop.
+        double crossedX = 0;
+        double crossedY = 0;
+        // Distance along the ray to the next vertical or horizontal grid line.
+        double nextX = firstX;
+        double nextY = firstY;
+        int face;
+        double rayLength;
+        while (true) {
+            if (nextX < nextY) {
+                rayLength = nextX;
+                crossedX++;
+                nextX = firstX + crossedX * deltaX;
+                gridX += stepX;
+                face = VERTICAL_WALL;
+            } else {
+                rayLength = nextY;
+                crossedY++;
+                nextY = firstY + crossedY * deltaY;
+                gridY += stepY;
+                face = HORIZONTAL_WALL;
+            }
+            int wallDistance = world.wallDistanceAtGridPos(gridX, gridY);
+            if (wallDistance == 0) {
+                break;
+            }
+            if (wallDistance > MIN_SKIPPED_CELLS) {
+                // The cells less than wallDistance away are empty. Cross every grid line the
+                // ray would cross before leaving them.
+                int reach = wallDistance - 1;
+                double leaveX = firstX + (crossedX + reach) * deltaX;
+                double leaveY = firstY + (crossedY + reach) * deltaY;
+                int skippedX;
+                int skippedY;
+                if (leaveX < leaveY) { // Leaves across a vertical line, as in the loop.
+                    skippedX = reach;
+                    skippedY = linesBefore(firstY, deltaY, crossedY, reach, leaveX, true);
+                } else {
+                    skippedY = reach;
+                    skippedX = linesBefore(firstX, deltaX, crossedX, reach, leaveY, false);
+                }
+                crossedX += skippedX;
+                crossedY += skippedY;
+                gridX += skippedX * stepX;
+                gridY += skippedY * stepY;
+                nextX = firstX + crossedX * deltaX;
+                nextY = firstY + crossedY * deltaY;
+            }
+        }
+        storeHit(common, world, positionX, positionY, rayX, rayY, column, gridX, gridY, face, rayLength);
+    }
+
+    /**
+     * Counts the grid lines of one direction the ray crosses before the given distance, in the
+     * order the stepping loop would cross them.
+     * @param crossed the lines of the direction already crossed.
+     * @param most the most lines to count.
+     * @param inclusive true if a line exactly at the distance is crossed first.
+     */
+    private static int linesBefore(double first, double delta, double crossed, int most, double distance,
+                                   boolean inclusive) {
+        // Estimated by dividing, then corrected for the rounding of the distances.
+        double estimate = Math.floor((distance - first) / delta) - crossed + 1;
+        int lines = (int) Math.min(Math.max(estimate, 0), most);
+        while (lines > 0 && !isBefore(first + (crossed + lines - 1) * delta, distance, inclusive)) {
+            lines--;
+        }
+        while (lines < most && isBefore(first + (crossed + lines) * delta, distance, inclusive)) {
+            lines++;
+        }
+        return lines;
+    }
+
+    private static boolean isBefore(double lineDistance, double distance, boolean inclusive) {
+        return inclusive ? lineDistance <= distance : lineDistance < distance;
+    }
+
+    /**
+     * Stores the distance and the texture information of the wall a column's ray hit.
+     * @param rayLength the distance to the wall along the ray in grid units.
+     */
+    private static void storeHit(RendererCommon common, World world, double positionX, double positionY,
+                                 double rayX, double rayY, int column, int gridX, int gridY, int face,
+                                 double rayLength) {
+        // The hit point along the wall decides the texture strip.
+        double hit = (face == VERTICAL_WALL) ? positionY + rayLength * rayY : positionX + rayLength * rayX;
+        common.gridIndexes[column] = (int) ((hit - Math.floor(hit)) * World.GRID_SIZE);
+        common.wallFaces[column] = face;
+        common.textureIndexes[column] = world.charAtGridPos(gridX, gridY) - '0'; // Wall1 outside the level.
+        common.rayLengths[column] = rayLength * World.GRID_SIZE;
+        // Distance correction because of fish-eye effect.
+        int distance = (int) Math.max(rayLength * common.fishEyeCorrections[column] * World.GRID_SIZE, 1);
+        common.distancesToWalls[column] = distance;
+        common.wallHeights[column] = World.GRID_SIZE * common.distanceToProjectionPlane / distance;
+    }
+}
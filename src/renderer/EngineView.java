@@ -0,0 +1,22 @@
+package renderer;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * The common interface for the components showing the rendered image in the engine's window.
+ */
+public interface EngineView {
+    /**
+     * Renders the image.
+     * @param interpolation used in prediction.
+     */
+    public void update(double interpolation);
+
+    /**
+     * Stops rendering. Called when the view is removed from the window.
+     */
+    public void dispose();
+}
@@ -0,0 +1,168 @@
+package renderer;
+
+import environment.World;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Casts the textured floor and ceiling of the software renderer row by row. The rows between
+ * the furthest wall top and bottom are covered by walls in every column, so only the rows
+ * above and below them are drawn, and in those only the runs of columns not covered by their
+ * wall. The rows are split into bands drawn in the render pool. Depends on the wall heights
+ * from the RayCaster and must run before FramebufferDrawer draws the walls next to it.
+ */
+public class FloorCaster implements RendererComponent {
+    private static final int BANDS_PER_THREAD = 4;
+
+    /**
+     * A band of rows counted over the ceiling rows and then the floor rows. Halved until narrow
+     * enough.
+     */
+    private static class Band extends RecursiveAction {
+        private final RendererCommon common;
+        private final int ceilingRows;
+        private final int firstRow;
+        private final int endRow;
+        private final int bandHeight;
+
+        Band(RendererCommon common, int ceilingRows, int firstRow, int endRow, int bandHeight) {
+            this.common = common;
+            this.ceilingRows = ceilingRows;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - firstRow <= bandHeight) {
+                drawRows(common, ceilingRows, firstRow, endRow);
+            } else {
+                int middle = (firstRow + endRow) >>> 1;
+                invokeAll(new Band(common, ceilingRows, firstRow, middle, bandHeight),
+                        new Band(common, ceilingRows, middle, endRow, bandHeight));
+            }
+        }
+    }
+
+    public void update(RendererCommon common) {
+        updateFloorRays(common);
+        updateWallSpans(common);
+        int height = common.RESOLUTION_Y;
+        int ceilingRows = Math.min(Math.max(common.furthestWallTop, 0), height);
+        int floorRows = height - Math.min(Math.max(common.furthestWallBottom, ceilingRows), height);
+        ForkJoinPool pool = common.renderPool;
+        if (pool == null) { // Single threaded.
+            drawRows(common, ceilingRows, 0, ceilingRows + floorRows);
+        } else {
+            int bandHeight = Math.max(height / (pool.getParallelism() * BANDS_PER_THREAD), 1);
+            pool.invoke(new Band(common, ceilingRows, 0, ceilingRows + floorRows, bandHeight));
+        }
+    }
+
+    /**
+     * Gives the ceiling or floor pixel at the given column and row.
+     * @param common the current frame.
+     * @param texels column-major texture or null for flat shading.
+     * @param shades the flat shade of each row from the horizon, used if texels is null.
+     * @param column on screen.
+     * @param rowFromHorizon the row counted from the horizon, 0 being the row next to it.
+     * @return the shaded RGB value.
+     */
+    private static int floorPixel(RendererCommon common, int[] texels, int[] shades, int column, int rowFromHorizon) {
+        int row = Math.min(rowFromHorizon, common.rowDistances.length - 1);
+        if (texels == null) {
+            return shades[row];
+        }
+        double distance = common.rowDistances[row];
+        int textureMask = RendererCommon.TEXTURE_SIZE - 1;
+        int u = (int) (common.viewerTexelX + distance * common.floorRaysX[column]) & textureMask;
+        int v = (int) (common.viewerTexelY + distance * common.floorRaysY[column]) & textureMask;
+        return common.shadeTable.shade(texels[u * RendererCommon.TEXTURE_SIZE + v], common.rowShadeLevels[row]);
+    }
+
+    /**
+     * Rotates the column rays to the viewer's direction and scales them from the perpendicular
+     * distance of a row to texels.
+     */
+    private static void updateFloorRays(RendererCommon common) {
+        double texelsPerUnit = RendererCommon.TEXTURE_SIZE / (double) World.GRID_SIZE;
+        double directionX = Math.cos(common.viewerDirection);
+        double directionY = Math.sin(common.viewerDirection);
+        for (int i = 0; i < common.RESOLUTION_X; i++) {
+            double scale = texelsPerUnit / common.fishEyeCorrections[i];
+            common.floorRaysX[i] = (directionX * common.columnRaysX[i] - directionY * common.columnRaysY[i]) * scale;
+            common.floorRaysY[i] = (directionY * common.columnRaysX[i] + directionX * common.columnRaysY[i]) * scale;
+        }
+        common.viewerTexelX = common.viewerX * texelsPerUnit;
+        common.viewerTexelY = common.viewerY * texelsPerUnit;
+    }
+
+    /**
+     * Finds the rows each column's wall covers on screen, the same way FramebufferDrawer does.
+     */
+    private static void updateWallSpans(RendererCommon common) {
+        int height = common.RESOLUTION_Y;
+        for (int i = 0; i < common.RESOLUTION_X; i++) {
+            int wallHeight = common.wallHeights[i];
+            int wallTop = (height - wallHeight) / 2 - common.wallDrawShift;
+            int drawStart = Math.min(Math.max(wallTop, 0), height);
+            common.wallDrawStarts[i] = drawStart;
+            common.wallDrawEnds[i] = Math.max(Math.min(wallTop + wallHeight, height), drawStart);
+        }
+    }
+
+    private static void drawRows(RendererCommon common, int ceilingRows, int firstRow, int endRow) {
+        int width = common.RESOLUTION_X;
+        int height = common.RESOLUTION_Y;
+        int horizon = height / 2 - common.wallDrawShift;
+        int[] pixels = common.pixels;
+        int[] wallDrawStarts = common.wallDrawStarts;
+        int[] wallDrawEnds = common.wallDrawEnds;
+        for (int i = firstRow; i < endRow; i++) {
+            boolean ceiling = i < ceilingRows;
+            int y;
+            int rowFromHorizon;
+            int[] texels;
+            int[] shades;
+            if (ceiling) {
+                y = i;
+                rowFromHorizon = Math.max(horizon - 1 - y, 0);
+                texels = common.ceilingTexels;
+                shades = common.ceilingShades;
+            } else {
+                y = height - 1 - (i - ceilingRows);
+                rowFromHorizon = Math.max(y - horizon, 0);
+                texels = common.floorTexels;
+                shades = common.floorShades;
+            }
+            int rowStart = y * width;
+            int flatPixel = (texels == null) ? floorPixel(common, null, shades, 0, rowFromHorizon) : 0;
+            int column = 0;
+            while (column < width) {
+                // Skip the columns where the wall covers this row, then draw up to the next one.
+                while (column < width && (ceiling ? y >= wallDrawStarts[column] : y < wallDrawEnds[column])) {
+                    column++;
+                }
+                int runStart = column;
+                while (column < width && (ceiling ? y < wallDrawStarts[column] : y >= wallDrawEnds[column])) {
+                    column++;
+                }
+                if (texels == null) {
+                    Arrays.fill(pixels, rowStart + runStart, rowStart + column, flatPixel);
+                } else {
+                    for (int x = runStart; x < column; x++) {
+                        pixels[rowStart + x] = floorPixel(common, texels, shades, x, rowFromHorizon);
+                    }
+                }
+            }
+        }
+    }
+}
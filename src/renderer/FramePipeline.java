@@ -0,0 +1,218 @@
+package renderer;
+
+import controllers.ContainsSettings;
+import controllers.SettingsController;
+import environment.Settings;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Renders frames on an own producer thread into two or three rotating RenderTargets, so the
+ * next frame is ray cast while the previous one is copied to the screen by the presenter.
+ * <p>
+ * The frames are handed over explicitly: the producer never touches the frame being presented
+ * and the presenter only takes finished frames. Only the newest frame matters, so a requested
+ * point of view replaces an earlier one not yet started and a finished frame replaces an
+ * earlier one not yet presented. With two buffers the producer reuses the finished frame the
+ * presenter hasn't taken yet, with three it never has to. If nothing has changed since the
+ * newest frame no new frame is produced.
+ * <p>
+ * The producer thread only runs while the pipeline is enabled. It is started when the
+ * FRAME_PIPELINE setting first enables the pipeline and stopped when the setting disables it.
+ */
+public class FramePipeline implements ContainsSettings, Runnable {
+    private int FRAME_PIPELINE; // Number of buffers, 0 when disabled.
+    private final Renderer renderer;
+    private final Runnable frameListener;
+    private Thread producerThread; // Null while the pipeline is disabled.
+    private RenderTarget[] frames;
+    private int presentedFrame = -1; // Held by the presenter.
+    private int readyFrame = -1; // The newest finished frame not yet presented.
+    private int generation; // Frames of older generations are dropped.
+    private boolean running = true; // False once disposed.
+    private boolean frameRequested;
+    // The point of view of the requested frame.
+    private int viewerX;
+    private int viewerY;
+    private double viewerDirection;
+    private int viewerHeight;
+
+    /**
+     * Constructor. The producer thread is started once the pipeline is enabled.
+     * @param renderer renders the frames.
+     * @param frameListener run on the producer thread after each finished frame, may be null.
+     */
+    public FramePipeline(Renderer renderer, Runnable frameListener) {
+        this.renderer = renderer;
+        this.frameListener = frameListener;
+        SettingsController.getInstance().addListener(this);
+    }
+
+    /**
+     * @return true if the FRAME_PIPELINE setting enables the pipeline.
+     */
+    public synchronized boolean isEnabled() {
+        return FRAME_PIPELINE > 0;
+    }
+
+    /**
+     * Requests a frame from the given point of view.
+     * @param x coordinate.
+     * @param y coordinate.
+     * @param direction the direction the viewer is facing.
+     * @param height the height of the viewer's eyes.
+     */
+    public synchronized void request(int x, int y, double direction, int height) {
+        viewerX = x;
+        viewerY = y;
+        viewerDirection = direction;
+        viewerHeight = height;
+        frameRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Takes the newest finished frame for presenting. The frame stays reserved for the
+     * presenter until the next call.
+     * @return the newest frame or the previously taken one if no new frame is finished.
+     *         Null before the first frame.
+     */
+    synchronized RenderTarget latestFrame() {
+        if (readyFrame != -1) {
+            presentedFrame = readyFrame;
+            readyFrame = -1;
+        }
+        return (presentedFrame == -1) ? null : frames[presentedFrame];
+    }
+
+    /**
+     * Waits for a new finished frame and takes it for presenting like latestFrame.
+     * @return the new frame or null if the pipeline was stopped or disabled meanwhile.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized RenderTarget nextFrame() throws InterruptedException {
+        while (running && FRAME_PIPELINE > 0 && readyFrame == -1) {
+            wait();
+        }
+        if (readyFrame == -1) {
+            return null;
+        }
+        return latestFrame();
+    }
+
+    /**
+     * Stops the producer thread and wakes up a presenter waiting in nextFrame.
+     */
+    public synchronized void dispose() {
+        running = false;
+        producerThread = null;
+        notifyAll();
+    }
+
+    /**
+     * The producer thread's loop, left when the thread is no longer the producer thread. Use
+     * request to request frames.
+     */
+    public void run() {
+        while (true) {
+            RenderTarget frame;
+            int frameIndex, frameGeneration, x, y, height;
+            double direction;
+            synchronized (this) {
+                while (producerThread == Thread.currentThread() && !frameRequested) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (producerThread != Thread.currentThread()) { // Disabled or disposed.
+                    return;
+                }
+                frameRequested = false;
+                x = viewerX;
+                y = viewerY;
+                direction = viewerDirection;
+                height = viewerHeight;
+                if (frames == null) {
+                    createFrames();
+                }
+                int newestFrame = (readyFrame != -1) ? readyFrame : presentedFrame;
+                if (newestFrame != -1 && renderer.isShowing(frames[newestFrame], x, y, direction, height)) {
+                    continue; // Nothing has changed, keep presenting the newest frame.
+                }
+                frameIndex = backFrame();
+                if (frameIndex == readyFrame) { // Drop the frame nobody took.
+                    readyFrame = -1;
+                }
+                frame = frames[frameIndex];
+                frameGeneration = generation;
+            }
+            boolean rendered = renderer.render(frame, x, y, direction, height);
+            synchronized (this) {
+                if (!rendered) { // The resolution changed, render again into new frames.
+                    frameRequested = true;
+                    if (frameGeneration == generation) {
+                        generation++;
+                        frames = null;
+                        presentedFrame = -1;
+                        readyFrame = -1;
+                    }
+                    continue;
+                }
+                if (frameGeneration != generation) {
+                    continue;
+                }
+                readyFrame = frameIndex;
+                notifyAll();
+            }
+            if (frameListener != null) {
+                frameListener.run();
+            }
+        }
+    }
+
+    public synchronized void updateSettings(Settings settings) {
+        FRAME_PIPELINE = settings.get("FRAME_PIPELINE");
+        if (FRAME_PIPELINE != 0) {
+            FRAME_PIPELINE = Math.min(Math.max(FRAME_PIPELINE, 2), 3);
+        }
+        // The Renderer may not have the new resolution yet, so the frames are created lazily.
+        generation++;
+        frames = null;
+        presentedFrame = -1;
+        readyFrame = -1;
+        if (FRAME_PIPELINE > 0 && producerThread == null && running) {
+            producerThread = new Thread(this, "Frame producer");
+            producerThread.setDaemon(true);
+            producerThread.start();
+        } else if (FRAME_PIPELINE == 0) {
+            // A frame being rendered is dropped as its generation is old.
+            producerThread = null;
+        }
+        notifyAll();
+    }
+
+    private void createFrames() {
+        frames = new RenderTarget[FRAME_PIPELINE];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = renderer.createTarget();
+        }
+    }
+
+    /**
+     * @return a frame neither presented nor waiting to be presented, or the waiting one if
+     *         there are only two buffers.
+     */
+    private int backFrame() {
+        for (int i = 0; i < frames.length; i++) {
+            if (i != presentedFrame && i != readyFrame) {
+                return i;
+            }
+        }
+        return readyFrame;
+    }
+}
@@ -0,0 +1,53 @@
+package renderer;
+
+import environment.World;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Draws the shaded walls straight into the framebuffer one column at a time. Used instead of
+ * the Java2D components by the software renderer. Depends on RayCaster and Shader. FloorCaster
+ * draws the floor and the ceiling around the walls, so every pixel is written once.
+ */
+public class FramebufferDrawer implements ColumnRendererComponent {
+
+    public void update(RendererCommon common) {
+        update(common, 0, common.RESOLUTION_X);
+    }
+
+    public void update(RendererCommon common, int firstColumn, int endColumn) {
+        int[] pixels = common.pixels;
+        int width = common.RESOLUTION_X;
+        int height = common.RESOLUTION_Y;
+        int textureSize = RendererCommon.TEXTURE_SIZE;
+        ShadeTable shadeTable = common.shadeTable;
+        for (int column = firstColumn; column < endColumn; column++) {
+            int wallHeight = common.wallHeights[column];
+            int wallTop = (height - wallHeight) / 2 - common.wallDrawShift;
+            int drawStart = Math.min(Math.max(wallTop, 0), height);
+            int drawEnd = Math.max(Math.min(wallTop + wallHeight, height), drawStart);
+            int textureIndex = common.textureIndexes[column];
+            if (textureIndex < 1 || common.wallTexels.length <= textureIndex) { // Unsupported texture.
+                textureIndex = 1;
+            }
+            int[] texels = common.wallTexels[textureIndex];
+            int texelColumn = common.gridIndexes[column] * textureSize / World.GRID_SIZE;
+            texelColumn = Math.min(Math.max(texelColumn, 0), textureSize - 1) * textureSize;
+            int shadeLevel = common.shadeLevels[column];
+
+            int pixel = drawStart * width + column;
+            // Walk the texture in 16.16 fixed point.
+            int texelStep = (textureSize << 16) / Math.max(wallHeight, 1);
+            int texelRow = (drawStart - wallTop) * texelStep;
+            for (int y = drawStart; y < drawEnd; y++) {
+                int texel = texels[texelColumn + Math.min(texelRow >> 16, textureSize - 1)];
+                pixels[pixel] = shadeTable.shade(texel, shadeLevel);
+                texelRow += texelStep;
+                pixel += width;
+            }
+        }
+    }
+}
@@ -19,13 +19,13 @@ import java.util.ArrayList;
 
 /**
  * A Top-Down view of the level. Used by the level editor or could be an in-game map.
+ * Only the squares inside the visible part of the view are drawn, so the level can be far
+ * larger than what fits in an image.
  */
 public class MapView extends JPanel implements ContainsSettings {
     public int PIXELS_PER_SQUARE;
     private World world;
     private ArrayList<Entity> drawablesList;
-    private BufferedImage buffer;
-    private Graphics2D bufferG2D;
     private final Predictor predictor;
     private double interpolation;
     private BufferedImage wallSprites[];
@@ -48,12 +48,7 @@ public class MapView extends JPanel implements ContainsSettings {
      * ReInits the MapView if world has changed.
      */
     public void reInit() {
-        if (world != null) { // Wait if world is null.
-            buffer = new BufferedImage(world.getWidth() * PIXELS_PER_SQUARE,
-                    world.getHeight() * PIXELS_PER_SQUARE,
-            BufferedImage.TYPE_INT_RGB);
-            bufferG2D = buffer.createGraphics();
-        }
+        revalidate(); // The size of the level may have changed.
     }
 
     /**
@@ -81,14 +76,19 @@ public class MapView extends JPanel implements ContainsSettings {
      * @param screen
      */
     public void paint(Graphics screen) {
-        bufferG2D.setPaint(Color.lightGray);
-        bufferG2D.fill(getVisibleRect());
-        drawWalls(bufferG2D);
+        Graphics2D g2d = (Graphics2D) screen;
+        Rectangle visible = getVisibleRect();
+        Rectangle clip = screen.getClipBounds();
+        if (clip != null) {
+            visible = visible.intersection(clip);
+        }
+        g2d.setPaint(Color.lightGray);
+        g2d.fill(visible);
+        drawWalls(g2d, visible);
         for (Entity e : drawablesList) {
-            drawEntity(bufferG2D, e, interpolation);
+            drawEntity(g2d, e, interpolation);
         }
         Toolkit.getDefaultToolkit().sync();
-        ((Graphics2D) screen).drawImage(buffer, null, 0, 0);
         screen.dispose();
     }
 
@@ -128,9 +128,13 @@ public class MapView extends JPanel implements ContainsSettings {
         reInit();
     }
 
-    private void drawWalls(Graphics2D g2d) {
-        for (int y = 0; y < world.getHeight(); y++) {
-            for (int x = 0; x < world.getWidth(); x++) {
+    private void drawWalls(Graphics2D g2d, Rectangle area) {
+        int firstX = Math.max(area.x / PIXELS_PER_SQUARE, 0);
+        int firstY = Math.max(area.y / PIXELS_PER_SQUARE, 0);
+        int endX = Math.min((area.x + area.width + PIXELS_PER_SQUARE - 1) / PIXELS_PER_SQUARE, world.getWidth());
+        int endY = Math.min((area.y + area.height + PIXELS_PER_SQUARE - 1) / PIXELS_PER_SQUARE, world.getHeight());
+        for (int y = firstY; y < endY; y++) {
+            for (int x = firstX; x < endX; x++) {
                 char c = world.charAtGridPos(x, y);
                 if (Character.isDigit(c) && c != '0') { // If character is wall.
                     try {
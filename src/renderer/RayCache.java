@@ -0,0 +1,141 @@
+package renderer;
+
+import environment.World;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Reuses the rays of the previous frame when the viewer has only turned. The turn is snapped to
+ * whole columns, so after a turn of n columns the rays of the previous frame are the rays of the
+ * current one shifted by n columns and only the n columns turned into view are cast. The
+ * direction is off by at most half a column then, frames cast in full aren't snapped. If the
+ * viewer stands still nothing is cast.
+ * <p>
+ * Runs before the bands and prepares the columns, getCaster gives the ColumnRendererComponent
+ * to be used in the bands instead of the ray caster.
+ */
+public class RayCache implements RendererComponent {
+    private final ColumnRendererComponent caster;
+    private boolean valid;
+    // What the cached rays were cast from.
+    private double[] rayLengths;
+    private World world;
+    private int worldVersion;
+    private int viewerX;
+    private int viewerY;
+    private double direction;
+    // Columns which must be cast in this frame.
+    private int staleFirstColumn;
+    private int staleEndColumn;
+
+    /**
+     * Casts the stale columns and corrects the distances of the shifted ones.
+     */
+    private class CachedRayCaster implements ColumnRendererComponent {
+        private final ColumnRendererComponent rayCaster;
+
+        CachedRayCaster(ColumnRendererComponent rayCaster) {
+            this.rayCaster = rayCaster;
+        }
+
+        public void update(RendererCommon common) {
+            update(common, 0, common.RESOLUTION_X);
+            common.updateFurthestWallTop();
+        }
+
+        public void update(RendererCommon common, int firstColumn, int endColumn) {
+            int castFirst = Math.max(firstColumn, staleFirstColumn);
+            int castEnd = Math.min(endColumn, staleEndColumn);
+            if (castFirst < castEnd) {
+                rayCaster.update(common, castFirst, castEnd);
+                reuseColumns(common, firstColumn, castFirst);
+                reuseColumns(common, castEnd, endColumn);
+            } else {
+                reuseColumns(common, firstColumn, endColumn);
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param rayCaster casts the columns not in the cache.
+     */
+    public RayCache(ColumnRendererComponent rayCaster) {
+        caster = new CachedRayCaster(rayCaster);
+    }
+
+    /**
+     * @return the ray caster to be used in the bands after this component.
+     */
+    public ColumnRendererComponent getCaster() {
+        return caster;
+    }
+
+    /**
+     * Snaps the viewer's turn to whole columns and shifts the rays of the previous frame, if they
+     * can be reused.
+     * @param common the frame to be rendered.
+     */
+    public void update(RendererCommon common) {
+        int width = common.RESOLUTION_X;
+        double radsPerColumn = Math.toRadians(common.FOV) / width;
+        double shift = Math.rint((common.viewerDirection - direction) / radsPerColumn);
+        if (valid && rayLengths == common.rayLengths && world == common.world
+                && worldVersion == world.getVersion() && viewerX == common.viewerX
+                && viewerY == common.viewerY && Math.abs(shift) < width) {
+            common.viewerDirection = direction + shift * radsPerColumn;
+            // Column i of this frame was column i + shift of the previous frame.
+            int columns = (int) shift;
+            if (columns > 0) {
+                shiftColumns(common, columns, 0, width - columns);
+                staleFirstColumn = width - columns;
+                staleEndColumn = width;
+            } else if (columns < 0) {
+                shiftColumns(common, 0, -columns, width + columns);
+                staleFirstColumn = 0;
+                staleEndColumn = -columns;
+            } else {
+                staleFirstColumn = 0;
+                staleEndColumn = 0;
+            }
+        } else {
+            staleFirstColumn = 0;
+            staleEndColumn = width;
+        }
+        valid = true;
+        rayLengths = common.rayLengths;
+        world = common.world;
+        worldVersion = world.getVersion();
+        viewerX = common.viewerX;
+        viewerY = common.viewerY;
+        direction = common.viewerDirection;
+    }
+
+    /**
+     * Makes the next frame cast every column.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    private static void shiftColumns(RendererCommon common, int from, int to, int length) {
+        System.arraycopy(common.rayLengths, from, common.rayLengths, to, length);
+        System.arraycopy(common.gridIndexes, from, common.gridIndexes, to, length);
+        System.arraycopy(common.textureIndexes, from, common.textureIndexes, to, length);
+        System.arraycopy(common.wallFaces, from, common.wallFaces, to, length);
+    }
+
+    /**
+     * The fish-eye correction depends on the column, so the distances of shifted rays change.
+     */
+    private static void reuseColumns(RendererCommon common, int firstColumn, int endColumn) {
+        for (int i = firstColumn; i < endColumn; i++) {
+            int distance = (int) Math.max(common.rayLengths[i] * common.fishEyeCorrections[i], 1);
+            common.distancesToWalls[i] = distance;
+            common.wallHeights[i] = World.GRID_SIZE * common.distanceToProjectionPlane / distance;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package renderer;
+
+import controllers.FileController;
+import environment.Entity;
+import environment.Settings;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static renderer.RendererCommon.TEXTURE_SIZE;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * The textures, the ShadeTable and the render pool shared by every Renderer. They don't depend
+ * on the resolution or the point of view, so the views of a split screen use the same ones
+ * instead of loading their own copies. Uses the singleton pattern.
+ * <p>
+ * The assets are read-only once loaded. Each RendererCommon calls update with the new settings
+ * and the first call reloads what the changed settings affect.
+ */
+public class RenderAssets {
+    private static final RenderAssets singleton = new RenderAssets();
+    // The settings the assets depend on.
+    private static final String[] KEYS = {"SOFTWARE_RENDERER", "WALL_TEXTURES", "FLOOR_TEXTURE",
+            "CEILING_TEXTURE", "VIEW_DISTANCE", "GRID_SIZE", "RENDER_THREADS"};
+    private int[] loadedValues; // Values of the KEYS when last loaded, null before the first load.
+    private ShadeTable shadeTable;
+    private int[][] wallTexels;
+    private int[] floorTexels;
+    private int[] ceilingTexels;
+    private int[][] spriteTexels;
+    private ForkJoinPool renderPool;
+
+    /**
+     * Returns a singleton instance of the RenderAssets.
+     * @return The one and only RenderAssets.
+     */
+    public static RenderAssets getInstance() {
+        return singleton;
+    }
+
+    private RenderAssets() {
+    }
+
+    /**
+     * Loads the assets again if the settings they depend on have changed since the last call.
+     * @param settings the new settings.
+     */
+    public synchronized void update(Settings settings) {
+        int[] values = new int[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            values[i] = settings.get(KEYS[i]);
+        }
+        if (loadedValues != null && Arrays.equals(values, loadedValues)) {
+            return;
+        }
+        int renderThreads = settings.get("RENDER_THREADS");
+        if (renderThreads == 0) {
+            renderThreads = Runtime.getRuntime().availableProcessors();
+        }
+        int oldRenderThreads = (renderPool == null) ? 1 : renderPool.getParallelism();
+        if (loadedValues == null || renderThreads != oldRenderThreads) {
+            // Not shut down, as other views may still be rendering with it. Its idle threads time out.
+            renderPool = (renderThreads > 1) ? new ForkJoinPool(renderThreads) : null;
+        }
+        shadeTable = new ShadeTable(settings.get("VIEW_DISTANCE"));
+        spriteTexels = createSpriteTexels();
+        int wallTextures = settings.get("WALL_TEXTURES");
+        if (settings.get("SOFTWARE_RENDERER") == 1) {
+            wallTexels = loadWallTexels(wallTextures);
+            floorTexels = getFloorTexels(wallTextures, settings.get("FLOOR_TEXTURE"));
+            ceilingTexels = getFloorTexels(wallTextures, settings.get("CEILING_TEXTURE"));
+        } else {
+            wallTexels = null;
+            floorTexels = null;
+            ceilingTexels = null;
+        }
+        loadedValues = values;
+    }
+
+    /**
+     * @return the ShadeTable for the VIEW_DISTANCE.
+     */
+    public synchronized ShadeTable getShadeTable() {
+        return shadeTable;
+    }
+
+    /**
+     * @return column-major texels of each wall texture, index 0 unused. Null unless the
+     *         software renderer is used.
+     */
+    public synchronized int[][] getWallTexels() {
+        return wallTexels;
+    }
+
+    /**
+     * @return the floor texels or null when the floor is flat shaded.
+     */
+    public synchronized int[] getFloorTexels() {
+        return floorTexels;
+    }
+
+    /**
+     * @return the ceiling texels or null when the ceiling is flat shaded.
+     */
+    public synchronized int[] getCeilingTexels() {
+        return ceilingTexels;
+    }
+
+    /**
+     * @return column-major ARGB texels by Entity.Type ordinal, alpha 0 is see-through.
+     */
+    public synchronized int[][] getSpriteTexels() {
+        return spriteTexels;
+    }
+
+    /**
+     * @return the pool rendering in parallel, or null when rendering on a single thread.
+     */
+    public synchronized ForkJoinPool getRenderPool() {
+        return renderPool;
+    }
+
+    private static int[][] loadWallTexels(int wallTextures) {
+        // Index 0 is unused like in wallTextures. A plain white wall is used if textures are off.
+        int[][] texelsByNumber = new int[Math.max(wallTextures, 1) + 1][];
+        BufferedImage texture = new BufferedImage(TEXTURE_SIZE, TEXTURE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D textureG2D = texture.createGraphics();
+        for (int textureNumber = 1; textureNumber < texelsByNumber.length; textureNumber++) {
+            if (wallTextures == 0) {
+                textureG2D.setPaint(Color.white);
+                textureG2D.fillRect(0, 0, TEXTURE_SIZE, TEXTURE_SIZE);
+            } else {
+                BufferedImage wallTextureTemp = FileController.loadImage("res/wall" + textureNumber + ".png");
+                textureG2D.drawImage(wallTextureTemp, 0, 0, TEXTURE_SIZE, TEXTURE_SIZE, null);
+            }
+            int[] texels = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+            // Store column by column as the walls are drawn in vertical strips.
+            for (int x = 0; x < TEXTURE_SIZE; x++) {
+                for (int y = 0; y < TEXTURE_SIZE; y++) {
+                    texels[x * TEXTURE_SIZE + y] = texture.getRGB(x, y);
+                }
+            }
+            texelsByNumber[textureNumber] = texels;
+        }
+        textureG2D.dispose();
+        return texelsByNumber;
+    }
+
+    private int[] getFloorTexels(int wallTextures, int textureNumber) {
+        if (wallTextures == 0 || textureNumber < 1 || textureNumber >= wallTexels.length) {
+            return null;
+        }
+        return wallTexels[textureNumber];
+    }
+
+    /**
+     * Draws the sprites of the entities, a blue figure for the NPCs and a red pillar for the
+     * static entities like in the MapView.
+     */
+    private static int[][] createSpriteTexels() {
+        int[][] texelsByType = new int[Entity.Type.values().length][];
+        BufferedImage sprite = new BufferedImage(TEXTURE_SIZE, TEXTURE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D spriteG2D = sprite.createGraphics();
+        for (Entity.Type type : Entity.Type.values()) {
+            spriteG2D.setComposite(AlphaComposite.Clear);
+            spriteG2D.fillRect(0, 0, TEXTURE_SIZE, TEXTURE_SIZE);
+            spriteG2D.setComposite(AlphaComposite.Src);
+            int quarter = TEXTURE_SIZE / 4;
+            if (type == Entity.Type.STATIC) {
+                spriteG2D.setPaint(Color.red);
+                spriteG2D.fillRect(quarter + quarter / 2, quarter / 2, quarter, TEXTURE_SIZE - quarter / 2);
+                spriteG2D.setPaint(Color.red.darker());
+                spriteG2D.fillRect(quarter, 0, 2 * quarter, quarter / 2);
+            } else {
+                spriteG2D.setPaint(Color.blue);
+                spriteG2D.fillOval(quarter + quarter / 2, 0, quarter, quarter);
+                spriteG2D.fillRoundRect(quarter, quarter, 2 * quarter, 3 * quarter, quarter, quarter);
+            }
+            int[] texels = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+            for (int x = 0; x < TEXTURE_SIZE; x++) {
+                for (int y = 0; y < TEXTURE_SIZE; y++) {
+                    texels[x * TEXTURE_SIZE + y] = sprite.getRGB(x, y);
+                }
+            }
+            texelsByType[type.ordinal()] = texels;
+        }
+        spriteG2D.dispose();
+        return texelsByType;
+    }
+}
@@ -0,0 +1,99 @@
+package renderer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * An image a Renderer can draw a frame into, with its Graphics2D and pixels ready for the
+ * RendererComponents. Created by Renderer.createTarget. Remembers what was drawn into it, so an
+ * unchanged frame doesn't need to be drawn again.
+ * <p>
+ * The pixels are allocated for the full resolution. A frame can be rendered at a lower
+ * resolution by resizing, then the image is a smaller image sharing the same pixels.
+ */
+final class RenderTarget {
+    private final BufferedImage fullImage;
+    final int[] pixels;
+    BufferedImage image; // The image of the current size.
+    Graphics2D graphics;
+    private boolean drawn;
+    // What the image shows.
+    private int viewerX;
+    private int viewerY;
+    private double viewerDirection;
+    private int viewerHeight;
+    private int worldVersion;
+    private int entityVersion;
+    private int sceneVersion;
+
+    RenderTarget(int width, int height, int imageType) {
+        fullImage = new BufferedImage(width, height, imageType);
+        image = fullImage;
+        graphics = image.createGraphics();
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return true if this target was created for the given full resolution and type.
+     */
+    boolean fits(int width, int height, int imageType) {
+        return fullImage.getWidth() == width && fullImage.getHeight() == height
+                && fullImage.getType() == imageType;
+    }
+
+    /**
+     * Changes the size of the image. The pixels are packed row by row with the new width.
+     * @param width at most the full width.
+     * @param height at most the full height.
+     */
+    void resize(int width, int height) {
+        if (image.getWidth() == width && image.getHeight() == height) {
+            return;
+        }
+        if (width == fullImage.getWidth() && height == fullImage.getHeight()) {
+            image = fullImage;
+        } else {
+            int[] masks = ((SinglePixelPackedSampleModel) fullImage.getSampleModel()).getBitMasks();
+            WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height),
+                    width, height, width, masks, null);
+            image = new BufferedImage(fullImage.getColorModel(), raster, false, null);
+        }
+        graphics.dispose();
+        graphics = image.createGraphics();
+        drawn = false;
+    }
+
+    /**
+     * @return true if the image shows the given point of view and versions of the World.
+     */
+    boolean shows(int x, int y, double direction, int height, int worldVersion, int entityVersion,
+                  int sceneVersion) {
+        return drawn && viewerX == x && viewerY == y && viewerDirection == direction && viewerHeight == height
+                && this.worldVersion == worldVersion && this.entityVersion == entityVersion
+                && this.sceneVersion == sceneVersion;
+    }
+
+    /**
+     * Remembers what the image shows after it's drawn.
+     */
+    void setDrawn(int x, int y, double direction, int height, int worldVersion, int entityVersion,
+                  int sceneVersion) {
+        drawn = true;
+        viewerX = x;
+        viewerY = y;
+        viewerDirection = direction;
+        viewerHeight = height;
+        this.worldVersion = worldVersion;
+        this.entityVersion = entityVersion;
+        this.sceneVersion = sceneVersion;
+    }
+}
@@ -0,0 +1,302 @@
+package renderer;
+
+import controllers.ContainsSettings;
+import controllers.SettingsController;
+import environment.Entity;
+import environment.Settings;
+import environment.World;
+import profiler.FrameProfiler;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Renders a World from a viewer's point of view into an offscreen image using the
+ * RendererComponents. Needs no window or display, so it can be used as is on headless
+ * machines. RendererView uses it to draw on screen. Rendering and settings changes are
+ * synchronized, so a Renderer can be used from any one thread at a time.
+ * <p>
+ * A frame is drawn again only if the point of view, the World or the entities have changed
+ * since it was last drawn. If the viewer has only turned, the rays are reused by RayCache.
+ * <p>
+ * With the TARGET_FRAME_MS setting the software renderer renders at the resolution chosen by
+ * a ResolutionScaler, and the images are smaller than the resolution in the settings. The
+ * target is never shorter than a frame at MAX_FPS, as faster frames wouldn't be shown.
+ */
+public class Renderer implements ContainsSettings {
+    private final RendererCommon common;
+    private RenderTarget target; // Used unless another target is given.
+    private int imageType;
+    private int outputWidth; // The resolution in the settings.
+    private int outputHeight;
+    private ResolutionScaler resolutionScaler; // Null if the resolution is fixed.
+    private ColumnRendererComponent wallStripCreator;
+    private RendererComponent[] components; // In drawing order.
+    private RayCache rayCache;
+    private int[] componentStages; // FrameProfiler stage of each component.
+    private final int frameStage;
+    private int sceneVersion; // Changed when frames must be drawn again for other reasons than the World.
+
+    /**
+     * Constructor.
+     * @param world the World to be rendered.
+     */
+    public Renderer(World world) {
+        this(world, 1, 1);
+    }
+
+    /**
+     * Constructs a Renderer for one viewport of a split screen.
+     * @param world the World to be rendered.
+     * @param viewportColumns the width in the settings is divided by this.
+     * @param viewportRows the height in the settings is divided by this.
+     */
+    public Renderer(World world, int viewportColumns, int viewportRows) {
+        common = new RendererCommon();
+        common.world = world;
+        common.viewportColumns = viewportColumns;
+        common.viewportRows = viewportRows;
+        frameStage = FrameProfiler.getInstance().getStage("Frame");
+        SettingsController.getInstance().addListener(this);
+    }
+
+    /**
+     * Moves the point of view.
+     * @param x coordinate.
+     * @param y coordinate.
+     * @param direction the direction the viewer is facing.
+     * @param height the height of the viewer's eyes.
+     */
+    public void setViewer(int x, int y, double direction, int height) {
+        common.setViewer(x, y, direction, height);
+    }
+
+    /**
+     * Sets the entities drawn as sprites.
+     * @param entities the entities, or null to draw none.
+     * @param viewer the entity whose point of view is rendered. Not drawn.
+     */
+    public synchronized void setEntities(ArrayList<Entity> entities, Entity viewer) {
+        common.entities = entities;
+        common.viewerEntity = viewer;
+        sceneVersion++;
+    }
+
+    /**
+     * Makes the next frame be drawn with every ray cast, even if nothing has changed. Used for
+     * measuring the time of whole frames.
+     */
+    public synchronized void invalidate() {
+        sceneVersion++;
+        rayCache.invalidate();
+    }
+
+    /**
+     * Renders the image from the current point of view.
+     * @return the rendered image. The same image is reused by every call and it's not drawn
+     *         again if nothing has changed.
+     */
+    public synchronized BufferedImage render() {
+        render(target);
+        return target.image;
+    }
+
+    /**
+     * Renders the image from the given point of view into the given target.
+     * @param frame where to draw.
+     * @param x coordinate.
+     * @param y coordinate.
+     * @param direction the direction the viewer is facing.
+     * @param height the height of the viewer's eyes.
+     * @return false if the target doesn't fit the current resolution and nothing was drawn.
+     */
+    synchronized boolean render(RenderTarget frame, int x, int y, double direction, int height) {
+        setViewer(x, y, direction, height);
+        return render(frame);
+    }
+
+    /**
+     * @return true if the target already shows the given point of view of the current World.
+     */
+    synchronized boolean isShowing(RenderTarget frame, int x, int y, double direction, int height) {
+        return frame.shows(x, y, direction, height, common.world.getVersion(), common.world.getEntityVersion(),
+                sceneVersion);
+    }
+
+    /**
+     * @return a new target with the current resolution to render into.
+     */
+    synchronized RenderTarget createTarget() {
+        return new RenderTarget(outputWidth, outputHeight, imageType);
+    }
+
+    private boolean render(RenderTarget frame) {
+        if (!frame.fits(outputWidth, outputHeight, imageType)) {
+            return false;
+        }
+        if (resolutionScaler != null && (resolutionScaler.getWidth() != common.RESOLUTION_X
+                || resolutionScaler.getHeight() != common.RESOLUTION_Y)) {
+            common.resize(resolutionScaler.getWidth(), resolutionScaler.getHeight());
+        }
+        frame.resize(common.RESOLUTION_X, common.RESOLUTION_Y);
+        // The versions are read first, so changes made while drawing cause the frame to be drawn again.
+        int x = common.viewerX;
+        int y = common.viewerY;
+        double direction = common.viewerDirection;
+        int height = common.viewerHeight;
+        int worldVersion = common.world.getVersion();
+        int entityVersion = common.world.getEntityVersion();
+        if (frame.shows(x, y, direction, height, worldVersion, entityVersion, sceneVersion)) {
+            return true;
+        }
+        common.bufferG2D = frame.graphics;
+        common.pixels = frame.pixels;
+        FrameProfiler profiler = FrameProfiler.getInstance();
+        long frameStartNS = System.nanoTime();
+        for (int i = 0; i < components.length; i++) {
+            long startNS = System.nanoTime();
+            components[i].update(common);
+            profiler.record(componentStages[i], System.nanoTime() - startNS);
+        }
+        if (!common.SOFTWARE_RENDERER && wallStripCreator == null) {
+            for (Graphics2D g2d: common.stripsG2D) {
+                g2d.fillRect(0, 0, 1, common.RESOLUTION_Y);
+            }
+        }
+        long frameNS = System.nanoTime() - frameStartNS;
+        profiler.record(frameStage, frameNS);
+        if (resolutionScaler != null) {
+            resolutionScaler.frameRendered(frameNS);
+        }
+        frame.setDrawn(x, y, direction, height, worldVersion, entityVersion, sceneVersion);
+        common.bufferG2D = target.graphics;
+        common.pixels = target.pixels;
+        return true;
+    }
+
+    /**
+     * Renders the image from the given point of view.
+     * @param x coordinate.
+     * @param y coordinate.
+     * @param direction the direction the viewer is facing.
+     * @param height the height of the viewer's eyes.
+     * @return the rendered image. The same image is reused by every call.
+     */
+    public synchronized BufferedImage render(int x, int y, double direction, int height) {
+        setViewer(x, y, direction, height);
+        return render();
+    }
+
+    /**
+     * @return the image rendered to.
+     */
+    public BufferedImage getImage() {
+        return target.image;
+    }
+
+    /**
+     * @return the target render() draws into.
+     */
+    RenderTarget getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the pixels of the rendered image, row by row.
+     */
+    public int[] getPixels() {
+        return target.pixels;
+    }
+
+    /**
+     * @return the Graphics2D drawing on the rendered image.
+     */
+    public Graphics2D getGraphics() {
+        return common.bufferG2D;
+    }
+
+    /**
+     * @return the width of the image on screen. The rendered image can be smaller.
+     */
+    public int getWidth() {
+        return outputWidth;
+    }
+
+    /**
+     * @return the height of the image on screen. The rendered image can be smaller.
+     */
+    public int getHeight() {
+        return outputHeight;
+    }
+
+    public synchronized void updateSettings(Settings settings) {
+        common.updateSettings(settings);
+        sceneVersion++;
+        outputWidth = common.RESOLUTION_X;
+        outputHeight = common.RESOLUTION_Y;
+        int targetFrameMS = settings.get("TARGET_FRAME_MS");
+        int maxFps = settings.get("MAX_FPS");
+        if (targetFrameMS > 0 && maxFps > 0) {
+            targetFrameMS = Math.max(targetFrameMS, 1000 / maxFps);
+        }
+        if (targetFrameMS > 0 && common.SOFTWARE_RENDERER) {
+            resolutionScaler = new ResolutionScaler(targetFrameMS, outputWidth, outputHeight);
+        } else {
+            resolutionScaler = null;
+        }
+        // Init RendererComponents.
+        ColumnRendererComponent rayCaster;
+        if (common.RAY_CASTER == 1) {
+            rayCaster = new DDARayCaster();
+        } else {
+            rayCaster = new RayCaster();
+        }
+        rayCache = new RayCache(rayCaster);
+        rayCaster = rayCache.getCaster();
+        ColumnRendererComponent shader = new Shader();
+        if (common.SOFTWARE_RENDERER) {
+            imageType = BufferedImage.TYPE_INT_RGB;
+            // The walls are cast before the floor so that only the rows outside the walls are cast.
+            components = new RendererComponent[] {rayCache, new ColumnBandRenderer(rayCaster, shader),
+                    new FloorCaster(), new ColumnBandRenderer(new FramebufferDrawer()), new SpriteDrawer()};
+        } else {
+            imageType = BufferedImage.TYPE_INT_ARGB;
+            RendererComponent wallDrawer = new WallDrawer();
+            RendererComponent floorDrawer = new FloorDrawer(common);
+            RendererComponent ceilingDrawer = new CeilingDrawer(common);
+            if (common.WALL_TEXTURES == 0) {
+                wallStripCreator = null;
+                components = new RendererComponent[] {rayCache, floorDrawer, ceilingDrawer,
+                        new ColumnBandRenderer(rayCaster, shader), wallDrawer, new SpriteDrawer()};
+            } else {
+                wallStripCreator = new WallStripCreator(common);
+                components = new RendererComponent[] {rayCache, floorDrawer, ceilingDrawer,
+                        new ColumnBandRenderer(rayCaster, wallStripCreator, shader), wallDrawer,
+                        new SpriteDrawer()};
+            }
+        }
+        target = createTarget();
+        common.bufferG2D = target.graphics;
+        common.pixels = target.pixels;
+        componentStages = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            String stageName = components[i].getClass().getSimpleName();
+            int earlierUses = 0; // Number the components used more than once.
+            for (int j = 0; j < i; j++) {
+                if (components[j].getClass() == components[i].getClass()) {
+                    earlierUses++;
+                }
+            }
+            if (earlierUses > 0) {
+                stageName += " " + (earlierUses + 1);
+            }
+            componentStages[i] = FrameProfiler.getInstance().getStage(stageName);
+        }
+    }
+}
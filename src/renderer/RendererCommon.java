@@ -2,12 +2,17 @@ package renderer;
 
 import controllers.ContainsSettings;
 import controllers.FileController;
+import environment.Entity;
 import environment.Settings;
 import environment.World;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.RescaleOp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /*
  * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
@@ -16,30 +21,98 @@ import java.awt.image.RescaleOp;
 
 /**
  * Contains the global variables and some utility functions used by the renderer's components.
+ * The textures, the ShadeTable and the render pool come from RenderAssets and are shared with
+ * the other Renderers, so the components must only read them.
  */
 public class RendererCommon implements ContainsSettings {
+    public static final int TEXTURE_SIZE = 256; // Texture width and height in the software renderer.
+    public static final int VERTICAL_WALL = 0;
+    public static final int HORIZONTAL_WALL = 1;
+    public boolean SOFTWARE_RENDERER;
+    public int RAY_CASTER; // 0 for RayCaster, 1 for DDARayCaster.
     public int FOV;
     public int RESOLUTION_X;
     public int RESOLUTION_Y;
+    public int viewportColumns = 1; // The resolution in the settings is split between the viewports.
+    public int viewportRows = 1;
     public int VIEW_DISTANCE;
     public int WALL_TEXTURES;
+    public int FLOOR_TEXTURE; // Wall texture used on the floor, 0 for flat shading.
+    public int CEILING_TEXTURE; // Wall texture used on the ceiling, 0 for flat shading.
     public World world;
     public int viewerX;
     public int viewerY;
     public int viewerHeight;
     public double viewerDirection;
+    public double[] rayLengths; // Distance to the wall along each column's ray, before fish-eye correction.
     public int[] distancesToWalls;
     public int[] wallHeights;
     public int[] gridIndexes; // The place in the grid for each wall, needed for textures.
     public int[] textureIndexes; // Which texture to draw at which strip.
+    public int[] wallFaces; // VERTICAL_WALL or HORIZONTAL_WALL for each strip.
+    public double[] columnAngles; // Angle of each column's ray relative to the viewer's direction.
+    public double[] fishEyeCorrections; // Cosine of the column angle.
+    public double[] columnRaysX; // Column rays as unit vectors when the viewer faces along the x-axis.
+    public double[] columnRaysY;
+    public int[] shadeLevels; // Brightness level of each strip.
     public RescaleOp[] shaderOperations;
+    public ShadeTable shadeTable;
     public Graphics2D bufferG2D;
     public Graphics2D[] stripsG2D;
     public BufferedImage[] strips;
     public BufferedImage[] wallTextures;
+    public int[] pixels; // The framebuffer used by the software renderer.
+    public int[][] wallTexels; // Column-major texels of each wall texture for the software renderer.
+    public int[] floorShades; // Shaded floor color by rows below the horizon.
+    public int[] ceilingShades; // Shaded ceiling color by rows above the horizon.
+    public int[] floorTexels; // Null when the floor is flat shaded.
+    public int[] ceilingTexels; // Null when the ceiling is flat shaded.
+    public double[] rowDistances; // Distance to the floor and ceiling by rows from the horizon.
+    public int[] rowShadeLevels; // Brightness level of the floor and ceiling by rows from the horizon.
+    public double[] floorRaysX; // Rotated column rays in texels per distance, updated by FloorCaster.
+    public double[] floorRaysY;
+    public int[] wallDrawStarts; // First row of each column's wall on screen, updated by FloorCaster.
+    public int[] wallDrawEnds; // Row after the last row of each column's wall on screen.
+    public double viewerTexelX; // The viewer's position in texels, updated by FloorCaster.
+    public double viewerTexelY;
+    public int[][] spriteTexels; // Column-major ARGB texels by Entity.Type ordinal, alpha 0 is see-through.
+    public ArrayList<Entity> entities; // Drawn as sprites, may be null.
+    public Entity viewerEntity; // Not drawn as a sprite.
     public int wallDrawShift;
     public int furthestWallTop;
+    public int furthestWallBottom;
     public int distanceToProjectionPlane;
+    public ForkJoinPool renderPool; // Null when rendering on a single thread.
+
+    /**
+     * Moves the viewer. Also updates the vertical shift of the walls caused by the viewer's height.
+     * @param x coordinate.
+     * @param y coordinate.
+     * @param direction the direction the viewer is facing.
+     * @param height the height of the viewer's eyes.
+     */
+    public void setViewer(int x, int y, double direction, int height) {
+        viewerX = x;
+        viewerY = y;
+        viewerDirection = direction;
+        viewerHeight = height;
+        wallDrawShift = (viewerHeight - World.GRID_SIZE / 2) * RESOLUTION_Y / World.GRID_SIZE;
+    }
+
+    /**
+     * Finds the top and the bottom of the lowest wall on screen. Called after the wall heights
+     * are calculated.
+     */
+    public void updateFurthestWallTop() {
+        int minWallProjectedHeight = RESOLUTION_Y;
+        for (int wallHeight : wallHeights) {
+            if (wallHeight < minWallProjectedHeight) {
+                minWallProjectedHeight = wallHeight;
+            }
+        }
+        furthestWallTop = (RESOLUTION_Y - minWallProjectedHeight) / 2 - wallDrawShift;
+        furthestWallBottom = furthestWallTop + minWallProjectedHeight;
+    }
 
     /**
      * Creates a shaded floor image used by the floor and ceiling drawers.
@@ -48,29 +121,121 @@ public class RendererCommon implements ContainsSettings {
      */
     public BufferedImage createFloorImage(Color color) {
         BufferedImage floorImage = new BufferedImage(RESOLUTION_X, RESOLUTION_Y, BufferedImage.TYPE_INT_RGB);
-        Graphics2D floorG2D = (Graphics2D) floorImage.getGraphics();
-        BufferedImage floorImageRow = new BufferedImage(RESOLUTION_X, 1, BufferedImage.TYPE_INT_RGB);
-        Graphics2D floorRowG2D = (Graphics2D) floorImageRow.getGraphics();
+        int[] floorPixels = ((DataBufferInt) floorImage.getRaster().getDataBuffer()).getData();
+        int[] shades = createFloorShades(color);
+        for (int row = 0; row < RESOLUTION_Y; row++) {
+            Arrays.fill(floorPixels, row * RESOLUTION_X, (row + 1) * RESOLUTION_X, shades[row]);
+        }
+        return floorImage;
+    }
+
+    /**
+     * Creates the shaded colors of a floor row by row starting from the horizon.
+     * @param color the base color of the floor.
+     * @return the shaded RGB value for each row.
+     */
+    public int[] createFloorShades(Color color) {
+        int[] shades = new int[RESOLUTION_Y];
         double radsPerRow = Math.atan(1 / (double) distanceToProjectionPlane);
         double angle = 0.00000000000000000001; // To avoid division by zero
-        floorRowG2D.setPaint(color);
-        floorRowG2D.fillRect(0, 0, RESOLUTION_X, 1);
         for (int row = 0; row < RESOLUTION_Y; row++) {
-            int distanceToFloor = (int) (viewerHeight / Math.sin(angle));
-            RescaleOp shadeOp = Shader.getShadeOp(VIEW_DISTANCE, distanceToFloor);
-            floorG2D.drawImage(floorImageRow, shadeOp, 0, row);
+            int distanceToFloor = (int) Math.min(World.GRID_SIZE / 2 / Math.sin(angle), Integer.MAX_VALUE);
+            shades[row] = shadeTable.shade(color.getRGB(), shadeTable.getLevel(distanceToFloor));
             angle += radsPerRow;
         }
-        return floorImage;
+        return shades;
     }
 
     public void updateSettings(Settings settings) {
         viewerHeight = World.GRID_SIZE / 2;
+        SOFTWARE_RENDERER = (settings.get("SOFTWARE_RENDERER") == 1);
+        RAY_CASTER = settings.get("RAY_CASTER");
         FOV = settings.get("FOV");
-        RESOLUTION_X = settings.get("RESOLUTION_X");
-        RESOLUTION_Y = settings.get("RESOLUTION_Y");
+        RESOLUTION_X = settings.get("RESOLUTION_X") / viewportColumns;
+        RESOLUTION_Y = settings.get("RESOLUTION_Y") / viewportRows;
         WALL_TEXTURES = settings.get("WALL_TEXTURES");
+        FLOOR_TEXTURE = settings.get("FLOOR_TEXTURE");
+        CEILING_TEXTURE = settings.get("CEILING_TEXTURE");
         VIEW_DISTANCE = settings.get("VIEW_DISTANCE");
+        RenderAssets assets = RenderAssets.getInstance();
+        assets.update(settings);
+        renderPool = assets.getRenderPool();
+        shadeTable = assets.getShadeTable();
+        spriteTexels = assets.getSpriteTexels();
+        wallTexels = assets.getWallTexels();
+        floorTexels = assets.getFloorTexels();
+        ceilingTexels = assets.getCeilingTexels();
+        resize(RESOLUTION_X, RESOLUTION_Y);
+        if (!SOFTWARE_RENDERER) {
+            loadWallTextures();
+        }
+    }
+
+    /**
+     * Changes the resolution rendered at without reloading the textures. Only the software
+     * renderer can be resized, the Java2D renderer needs updateSettings.
+     * @param width the new RESOLUTION_X.
+     * @param height the new RESOLUTION_Y.
+     */
+    public void resize(int width, int height) {
+        RESOLUTION_X = width;
+        RESOLUTION_Y = height;
+        distanceToProjectionPlane = (int) (RESOLUTION_X / 2 / Math.tan(Math.toRadians(FOV) / 2));
+        rayLengths = new double[RESOLUTION_X];
+        distancesToWalls = new int[RESOLUTION_X];
+        wallHeights = new int[RESOLUTION_X];
+        gridIndexes = new int[RESOLUTION_X];
+        textureIndexes = new int[RESOLUTION_X];
+        wallFaces = new int[RESOLUTION_X];
+        shadeLevels = new int[RESOLUTION_X];
+        createColumnTables();
+        if (SOFTWARE_RENDERER) {
+            floorShades = createFloorShades(Color.lightGray);
+            ceilingShades = createFloorShades(Color.darkGray);
+            createRowTables();
+        }
+        setViewer(viewerX, viewerY, viewerDirection, viewerHeight); // The wall shift depends on the height.
+    }
+
+    /**
+     * Precomputes the trigonometry of each column's ray. Only depends on FOV and RESOLUTION_X,
+     * so the ray casters just rotate the column rays by the viewer's direction.
+     */
+    public void createColumnTables() {
+        columnAngles = new double[RESOLUTION_X];
+        fishEyeCorrections = new double[RESOLUTION_X];
+        columnRaysX = new double[RESOLUTION_X];
+        columnRaysY = new double[RESOLUTION_X];
+        double radsPerRay = Math.toRadians(FOV) / RESOLUTION_X;
+        for (int i = 0; i < RESOLUTION_X; i++) {
+            // Start from the viewer's leftmost point of view.
+            columnAngles[i] = radsPerRay * (i - RESOLUTION_X / 2);
+            fishEyeCorrections[i] = Math.cos(columnAngles[i]);
+            columnRaysX[i] = Math.cos(columnAngles[i]);
+            columnRaysY[i] = Math.sin(columnAngles[i]);
+        }
+    }
+
+    /**
+     * Precomputes the distance and shading of each floor and ceiling row counted from the
+     * horizon. The viewer's height only moves the horizon, so these only depend on the
+     * resolution and FOV.
+     */
+    public void createRowTables() {
+        rowDistances = new double[RESOLUTION_Y];
+        rowShadeLevels = new int[RESOLUTION_Y];
+        floorRaysX = new double[RESOLUTION_X];
+        floorRaysY = new double[RESOLUTION_X];
+        wallDrawStarts = new int[RESOLUTION_X];
+        wallDrawEnds = new int[RESOLUTION_X];
+        for (int row = 0; row < RESOLUTION_Y; row++) {
+            // The eyes are half a wall above the floor, as seen through the middle of the row.
+            rowDistances[row] = World.GRID_SIZE / 2.0 * distanceToProjectionPlane / (row + 0.5);
+            rowShadeLevels[row] = shadeTable.getLevel((int) Math.min(rowDistances[row], Integer.MAX_VALUE));
+        }
+    }
+
+    private void loadWallTextures() {
         wallTextures = new BufferedImage[WALL_TEXTURES + 1];
         Graphics2D[] wallTextureG2Ds = new Graphics2D[WALL_TEXTURES + 1];
         for (int textureNumber = 1; textureNumber <= WALL_TEXTURES; textureNumber++) {
@@ -81,17 +246,12 @@ public class RendererCommon implements ContainsSettings {
             wallTextureG2Ds[textureNumber].drawImage(wallTextureTemp, 0, 0, RESOLUTION_Y,
                     RESOLUTION_Y, null);
         }
-        distanceToProjectionPlane = (int) (RESOLUTION_X / 2 / Math.tan(Math.toRadians(FOV) / 2));
-        distancesToWalls = new int[RESOLUTION_X];
-        wallHeights = new int[RESOLUTION_X];
-        gridIndexes = new int[RESOLUTION_X];
-        textureIndexes = new int[RESOLUTION_X];
         strips = new BufferedImage[RESOLUTION_X];
         stripsG2D = new Graphics2D[RESOLUTION_X];
         shaderOperations = new RescaleOp[RESOLUTION_X];
         for (int i = 0; i < RESOLUTION_X; i++) {
             strips[i] = new BufferedImage(1, RESOLUTION_Y, BufferedImage.TYPE_INT_RGB);
             stripsG2D[i] = strips[i].createGraphics();
-        } 
+        }
     }
 }
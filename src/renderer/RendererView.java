@@ -5,10 +5,12 @@ import controllers.SettingsController;
 import environment.Entity;
 import environment.Settings;
 import environment.World;
+import profiler.FrameProfiler;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 
 /*
  * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
@@ -16,38 +18,39 @@ import java.awt.image.BufferedImage;
  */
 
 /**
- * The main class of the renderer. Uses the RendererComponents to draw the image.
+ * Shows the image drawn by a Renderer in a window, as seen by the viewer Entity. With the
+ * FRAME_PIPELINE setting the frames are rendered by a FramePipeline and paint only copies them.
  */
-public class RendererView extends JPanel implements ContainsSettings {
+public class RendererView extends JPanel implements EngineView, ContainsSettings {
     private boolean SHOW_FPS;
-    private final RendererCommon common;
+    private boolean SHOW_PROFILE;
+    private final Renderer renderer;
+    private final FramePipeline pipeline;
     private final Entity viewer;
-    private BufferedImage buffer;
     private Predictor predictor;
-    private RendererComponent floorDrawer;
-    private RendererComponent ceilingDrawer;
-    private RendererComponent rayCaster;
-    private RendererComponent wallStripCreator;
-    private RendererComponent shader;
-    private RendererComponent wallDrawer;
-    private long lastDrawMS;
+    private final StatisticsOverlay statisticsOverlay;
+    private final int blitStage;
 
     /**
      * Constructor.
      * @param world the World to be used.
      * @param viewer the Entity representing the point of view.
+     * @param entities the entities drawn as sprites.
      */
-    public RendererView(World world, Entity viewer) {
-        common = new RendererCommon();
-        common.world = world;
+    public RendererView(World world, Entity viewer, ArrayList<Entity> entities) {
+        renderer = new Renderer(world);
+        renderer.setEntities(entities, viewer);
+        pipeline = new FramePipeline(renderer, new Runnable() {
+            public void run() {
+                repaint();
+            }
+        });
         this.viewer = viewer;
-        common.viewerX = viewer.x;
-        common.viewerY = viewer.y;
-        common.viewerDirection = viewer.direction;
-        common.viewerHeight = viewer.height;
+        renderer.setViewer(viewer.x, viewer.y, viewer.direction, viewer.height);
         setDoubleBuffered(true);
+        blitStage = FrameProfiler.getInstance().getStage("Blit");
         SettingsController.getInstance().addListener(this);
-        lastDrawMS = 0;
+        statisticsOverlay = new StatisticsOverlay();
     }
 
     /**
@@ -55,7 +58,7 @@ public class RendererView extends JPanel implements ContainsSettings {
      * @return the resolution of the engine.
      */
     public Dimension getPreferredSize() {
-        return new Dimension(common.RESOLUTION_X, common.RESOLUTION_Y);
+        return new Dimension(renderer.getWidth(), renderer.getHeight());
     }
 
     /**
@@ -64,11 +67,12 @@ public class RendererView extends JPanel implements ContainsSettings {
      */
     public void update(double interpolation) {
         predictor.predict(viewer, interpolation);
-        common.viewerX = predictor.getX();
-        common.viewerY = predictor.getY();
-        common.viewerDirection = predictor.getDirection();
-        common.viewerHeight = viewer.height;
-        repaint();
+        if (pipeline.isEnabled()) {
+            pipeline.request(predictor.getX(), predictor.getY(), predictor.getDirection(), viewer.height);
+        } else {
+            renderer.setViewer(predictor.getX(), predictor.getY(), predictor.getDirection(), viewer.height);
+            repaint();
+        }
     }
 
     /**
@@ -76,49 +80,35 @@ public class RendererView extends JPanel implements ContainsSettings {
      * @param screen where to draw the image.
      */
     public void paint(Graphics screen) {
-        floorDrawer.update(common);
-        ceilingDrawer.update(common);
-        rayCaster.update(common);
-        if (wallStripCreator != null) {
-            wallStripCreator.update(common);
-        }
-        shader.update(common);
-        wallDrawer.update(common);
-        if (wallStripCreator == null) {
-            for (Graphics2D g2d: common.stripsG2D) {
-                g2d.fillRect(0, 0, 1, common.RESOLUTION_Y);
+        RenderTarget frame;
+        if (pipeline.isEnabled()) {
+            frame = pipeline.latestFrame();
+            if (frame == null) {
+                return;
             }
+        } else {
+            renderer.render();
+            frame = renderer.getTarget();
         }
-        long currentMS = System.currentTimeMillis();
-        int fps = (int) (1000 / (currentMS - lastDrawMS));
-        if (SHOW_FPS) {
-            lastDrawMS = currentMS;
-            common.bufferG2D.setColor(Color.red);
-            common.bufferG2D.setFont(new Font("Dialog", Font.PLAIN, 12));
-            common.bufferG2D.drawString("FPS: " + fps, 5, 15);
-        }
+        BufferedImage buffer = frame.image;
         Toolkit.getDefaultToolkit().sync();
 
-        ((Graphics2D) screen).drawImage(buffer, null, 0, 0);
+        long blitStartNS = System.nanoTime();
+        // Scaled up if rendered at a lower resolution.
+        screen.drawImage(buffer, 0, 0, renderer.getWidth(), renderer.getHeight(), null);
+        // Drawn on screen to keep the frame clean for reuse.
+        statisticsOverlay.draw((Graphics2D) screen, SHOW_FPS, SHOW_PROFILE);
         screen.dispose();
+        FrameProfiler.getInstance().record(blitStage, System.nanoTime() - blitStartNS);
+    }
+
+    public void dispose() {
+        pipeline.dispose();
     }
 
     public void updateSettings(Settings settings) {
         SHOW_FPS = (settings.get("SHOW_FPS") == 1);
-        common.updateSettings(settings);
-        buffer = new BufferedImage(common.RESOLUTION_X, common.RESOLUTION_Y, BufferedImage.TYPE_INT_ARGB);
-        common.bufferG2D = buffer.createGraphics();
-        // Init RendererComponents.
+        SHOW_PROFILE = (settings.get("SHOW_PROFILE") == 1);
         predictor = new Predictor();
-        rayCaster = new RayCaster();
-        shader = new Shader();
-        wallDrawer = new WallDrawer(this);
-        floorDrawer = new FloorDrawer(common);
-        ceilingDrawer = new CeilingDrawer(common);
-        if (common.WALL_TEXTURES == 0) {
-            wallStripCreator = null;
-        } else {
-            wallStripCreator = new WallStripCreator(common);
-        }
     }
 }
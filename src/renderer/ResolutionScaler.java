@@ -0,0 +1,86 @@
+package renderer;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Chooses the resolution to render at to keep the frame time near the target. The frame times
+ * are averaged and the scale is only changed if the average is clearly over or under the
+ * target, and then not again until the average has settled, so the resolution doesn't keep
+ * jumping back and forth around the target.
+ */
+public class ResolutionScaler {
+    private static final double MIN_SCALE = 0.25;
+    private static final double SMOOTHING = 0.1; // Weight of the newest frame in the average.
+    private static final double SLOWER_LIMIT = 1.1; // Scale down when slower than this times the target.
+    private static final double FASTER_LIMIT = 0.75; // Scale up when faster than this times the target.
+    private static final int SETTLE_FRAMES = 15; // Frames to wait after a change.
+    private final long targetNS;
+    private final int fullWidth;
+    private final int fullHeight;
+    private double scale = 1;
+    private double averageNS;
+    private int framesToSettle;
+
+    /**
+     * Constructor. Starts from the full resolution.
+     * @param targetMS the frame time aimed at in milliseconds.
+     * @param fullWidth the highest and initial width.
+     * @param fullHeight the highest and initial height.
+     */
+    public ResolutionScaler(int targetMS, int fullWidth, int fullHeight) {
+        targetNS = targetMS * 1000000L;
+        this.fullWidth = fullWidth;
+        this.fullHeight = fullHeight;
+        averageNS = targetNS;
+    }
+
+    /**
+     * Tells how long the last frame took to render.
+     * @param frameNS the time in nanoseconds.
+     */
+    public void frameRendered(long frameNS) {
+        averageNS += (frameNS - averageNS) * SMOOTHING;
+        if (framesToSettle > 0) {
+            framesToSettle--;
+            return;
+        }
+        // The frame time is about proportional to the number of pixels, the square of the scale.
+        double newScale = scale;
+        if (averageNS > targetNS * SLOWER_LIMIT) {
+            newScale = Math.max(scale * Math.sqrt(targetNS / averageNS), MIN_SCALE);
+        } else if (averageNS < targetNS * FASTER_LIMIT) {
+            newScale = Math.min(scale * 1.1, 1);
+        }
+        if (getWidth(newScale) != getWidth() || getHeight(newScale) != getHeight()) {
+            // Guess the average at the new scale.
+            averageNS *= (newScale * newScale) / (scale * scale);
+            scale = newScale;
+            framesToSettle = SETTLE_FRAMES;
+        }
+    }
+
+    /**
+     * @return the width to render at.
+     */
+    public int getWidth() {
+        return getWidth(scale);
+    }
+
+    /**
+     * @return the height to render at.
+     */
+    public int getHeight() {
+        return getHeight(scale);
+    }
+
+    private int getWidth(double scale) {
+        return Math.max((int) (fullWidth * scale) & ~1, 2); // Even, to keep the middle column.
+    }
+
+    private int getHeight(double scale) {
+        return Math.max((int) (fullHeight * scale) & ~1, 2);
+    }
+}
@@ -0,0 +1,86 @@
+package renderer;
+
+import environment.World;
+
+import java.awt.image.RescaleOp;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Precomputed shading shared by the walls, the floor and the ceiling. Distances are quantized
+ * to brightness levels and each level has a table scaling a color channel, so shading a pixel
+ * is three table lookups. Nothing is allocated after construction.
+ */
+public class ShadeTable {
+    public static final int LEVELS = 64; // Number of brightness levels.
+    private static final int STEPS_PER_SQUARE = 32; // How finely distances are quantized.
+    private final int distanceShift; // Distances are quantized by shifting.
+    private final byte[] distanceLevels; // Brightness level by quantized distance.
+    private final int[] channelTable; // Shaded channel value by level * 256 + channel value.
+    private final RescaleOp[] shadeOperations; // Used by the Java2D renderer.
+
+    /**
+     * Creates the tables for the given view distance.
+     * @param viewDistance how many squares are seen at full brightness.
+     */
+    public ShadeTable(int viewDistance) {
+        distanceShift = 31 - Integer.numberOfLeadingZeros(Math.max(World.GRID_SIZE / STEPS_PER_SQUARE, 1));
+        // Beyond this distance everything is shaded to the darkest level.
+        int maxDistance = Math.max(viewDistance, 1) * World.GRID_SIZE * LEVELS;
+        distanceLevels = new byte[(maxDistance >> distanceShift) + 1];
+        for (int i = 0; i < distanceLevels.length; i++) {
+            float intensity = intensity(Math.max(i << distanceShift, 1), viewDistance);
+            distanceLevels[i] = (byte) Math.round(intensity * (LEVELS - 1));
+        }
+        channelTable = new int[LEVELS * 256];
+        shadeOperations = new RescaleOp[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            float intensity = level / (float) (LEVELS - 1);
+            for (int channel = 0; channel < 256; channel++) {
+                channelTable[level * 256 + channel] = (int) (channel * intensity);
+            }
+            shadeOperations[level] = new RescaleOp(intensity, 0, null);
+        }
+    }
+
+    /**
+     * @param distance to the object.
+     * @return the brightness level of an object at the given distance.
+     */
+    public int getLevel(int distance) {
+        int index = Math.max(distance, 0) >> distanceShift;
+        if (index >= distanceLevels.length) {
+            index = distanceLevels.length - 1;
+        }
+        return distanceLevels[index];
+    }
+
+    /**
+     * Shades a single RGB pixel.
+     * @param rgb the pixel to shade.
+     * @param level the brightness level given by getLevel.
+     * @return the shaded pixel.
+     */
+    public int shade(int rgb, int level) {
+        int base = level << 8;
+        return (channelTable[base + ((rgb >> 16) & 0xFF)] << 16)
+                | (channelTable[base + ((rgb >> 8) & 0xFF)] << 8)
+                | channelTable[base + (rgb & 0xFF)];
+    }
+
+    /**
+     * @param level the brightness level given by getLevel.
+     * @return the BufferedImageOp shading an image to the given level.
+     */
+    public RescaleOp getShadeOp(int level) {
+        return shadeOperations[level];
+    }
+
+    private static float intensity(int distance, int viewDistance) {
+        float intensity = (float) viewDistance * World.GRID_SIZE / distance;
+        return Math.min(intensity, 1.0f);
+    }
+}
@@ -0,0 +1,162 @@
+package renderer;
+
+import controllers.ContainsSettings;
+import controllers.SettingsController;
+import environment.Entity;
+import environment.Settings;
+import environment.World;
+import profiler.FrameProfiler;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Shows a split screen with a viewport for each viewer. Two viewports are stacked, three or
+ * four are laid out in a grid. Each viewport has its own Renderer, but they share the World,
+ * the entities and the RenderAssets. The viewports are rendered in parallel in the shared
+ * render pool, whose threads also cast the columns of each viewport.
+ */
+public class SplitScreenView extends JPanel implements EngineView, ContainsSettings {
+    private boolean SHOW_FPS;
+    private boolean SHOW_PROFILE;
+    private final Renderer[] renderers;
+    private final Entity[] viewers;
+    private final Predictor[] predictors;
+    private final ViewportRender[] renders; // Reused for each frame.
+    private final int columns;
+    private final int rows;
+    private final StatisticsOverlay statisticsOverlay;
+    private final int blitStage;
+
+    /**
+     * Renders a viewport. Set the pose and reinitialize it before each frame.
+     */
+    private static class ViewportRender extends RecursiveAction {
+        private final Renderer renderer;
+        private int x;
+        private int y;
+        private double direction;
+        private int height;
+
+        ViewportRender(Renderer renderer) {
+            this.renderer = renderer;
+        }
+
+        void setPose(int x, int y, double direction, int height) {
+            this.x = x;
+            this.y = y;
+            this.direction = direction;
+            this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            renderer.render(x, y, direction, height);
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param world the World to be used.
+     * @param viewers the Entity representing the point of view of each viewport, from 1 to 4.
+     * @param entities the entities drawn as sprites, including the viewers.
+     */
+    public SplitScreenView(World world, Entity[] viewers, ArrayList<Entity> entities) {
+        this.viewers = viewers;
+        columns = (viewers.length > 2) ? 2 : 1;
+        rows = (viewers.length > 1) ? 2 : 1;
+        renderers = new Renderer[viewers.length];
+        predictors = new Predictor[viewers.length];
+        renders = new ViewportRender[viewers.length];
+        for (int i = 0; i < viewers.length; i++) {
+            renderers[i] = new Renderer(world, columns, rows);
+            renderers[i].setEntities(entities, viewers[i]);
+            renderers[i].setViewer(viewers[i].x, viewers[i].y, viewers[i].direction, viewers[i].height);
+            predictors[i] = new Predictor();
+            renders[i] = new ViewportRender(renderers[i]);
+        }
+        setDoubleBuffered(true);
+        blitStage = FrameProfiler.getInstance().getStage("Blit");
+        SettingsController.getInstance().addListener(this);
+        statisticsOverlay = new StatisticsOverlay();
+    }
+
+    /**
+     * Used by pack()
+     * @return the resolution of the engine.
+     */
+    public Dimension getPreferredSize() {
+        return new Dimension(columns * renderers[0].getWidth(), rows * renderers[0].getHeight());
+    }
+
+    /**
+     * Renders the viewports and repaints.
+     * @param interpolation used in prediction.
+     */
+    public void update(double interpolation) {
+        for (int i = 0; i < viewers.length; i++) {
+            Predictor predictor = predictors[i];
+            predictor.predict(viewers[i], interpolation);
+            renders[i].setPose(predictor.getX(), predictor.getY(), predictor.getDirection(), viewers[i].height);
+            renders[i].reinitialize(); // A completed task would not run again.
+        }
+        ForkJoinPool pool = RenderAssets.getInstance().getRenderPool();
+        if (pool == null) { // Single threaded.
+            for (ViewportRender render : renders) {
+                render.invoke();
+            }
+        } else {
+            for (ViewportRender render : renders) {
+                pool.execute(render);
+            }
+            for (ViewportRender render : renders) {
+                render.join();
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Use the update method instead.
+     * @param screen where to draw the viewports.
+     */
+    public void paint(Graphics screen) {
+        Toolkit.getDefaultToolkit().sync();
+        long blitStartNS = System.nanoTime();
+        int width = renderers[0].getWidth();
+        int height = renderers[0].getHeight();
+        for (int i = 0; i < columns * rows; i++) {
+            int x = (i % columns) * width;
+            int y = (i / columns) * height;
+            if (i < renderers.length) {
+                Renderer renderer = renderers[i];
+                synchronized (renderer) { // Not while the next frame is being drawn.
+                    // Scaled up if rendered at a lower resolution.
+                    screen.drawImage(renderer.getImage(), x, y, width, height, null);
+                }
+            } else {
+                screen.setColor(Color.black);
+                screen.fillRect(x, y, width, height);
+            }
+        }
+        statisticsOverlay.draw((Graphics2D) screen, SHOW_FPS, SHOW_PROFILE);
+        screen.dispose();
+        FrameProfiler.getInstance().record(blitStage, System.nanoTime() - blitStartNS);
+    }
+
+    public void dispose() {
+    }
+
+    public void updateSettings(Settings settings) {
+        SHOW_FPS = (settings.get("SHOW_FPS") == 1);
+        SHOW_PROFILE = (settings.get("SHOW_PROFILE") == 1);
+    }
+}
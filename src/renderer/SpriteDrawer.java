@@ -0,0 +1,185 @@
+package renderer;
+
+import environment.Entity;
+import environment.PotentiallyVisibleSet;
+import environment.World;
+
+import java.util.ArrayList;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Draws the entities as billboard sprites into the framebuffer. Entities behind the viewer,
+ * outside the field of view or where the potentially visible set of the World says they can't be
+ * seen are culled first, the rest are drawn from the furthest to the nearest and each sprite
+ * column is hidden if the wall in that column is closer. Depends on the distancesToWalls of the
+ * RayCaster, so it must run after it. The work arrays only grow
+ * when there are more entities than ever before, so nothing is allocated per frame.
+ */
+public class SpriteDrawer implements RendererComponent {
+    private static final int INSERTION_SORT_LIMIT = 16;
+    private int[] depths = new int[0];
+    private int[] centerColumns = new int[0];
+    private long[] drawOrder = new long[0]; // Depth in the high bits, entity index in the low bits.
+    private long[] visibleBlocks; // Decoded from the potentially visible set for each frame.
+
+    public void update(RendererCommon common) {
+        ArrayList<Entity> entities = common.entities;
+        if (entities == null) {
+            return;
+        }
+        int entityCount = entities.size();
+        if (depths.length < entityCount) {
+            int capacity = Math.max(entityCount, depths.length * 2);
+            depths = new int[capacity];
+            centerColumns = new int[capacity];
+            drawOrder = new long[capacity];
+        }
+        // Read for each frame, as the grid size is a setting.
+        int nearPlane = World.GRID_SIZE / 8; // Closer sprites are not drawn.
+        int spriteSize = World.GRID_SIZE / 2; // Width and height in the world.
+        double directionX = Math.cos(common.viewerDirection);
+        double directionY = Math.sin(common.viewerDirection);
+        double radsPerColumn = Math.toRadians(common.FOV) / common.RESOLUTION_X;
+        // Half of the field of view as a slope, widened so that sprites partly in view are kept.
+        double viewSlope = Math.tan(Math.toRadians(common.FOV) / 2);
+        PotentiallyVisibleSet visibleSet = common.world.getPotentiallyVisibleSet();
+        if (visibleSet != null) {
+            visibleBlocks = visibleSet.visibleBlocks(common.viewerX >> World.GRID_SHIFT,
+                    common.viewerY >> World.GRID_SHIFT, visibleBlocks);
+        }
+        int visible = 0;
+        for (int i = 0; i < entityCount; i++) {
+            Entity entity = entities.get(i);
+            if (entity == common.viewerEntity) {
+                continue;
+            }
+            int dx = entity.x - common.viewerX;
+            int dy = entity.y - common.viewerY;
+            // In view space, depth points to the viewer's direction and side to the right.
+            double depth = dx * directionX + dy * directionY;
+            double side = dy * directionX - dx * directionY;
+            if (depth < nearPlane || Math.abs(side) - spriteSize > depth * viewSlope) {
+                continue;
+            }
+            if (visibleSet != null
+                    && !visibleSet.contains(visibleBlocks, entity.x >> World.GRID_SHIFT, entity.y >> World.GRID_SHIFT)) {
+                continue;
+            }
+            depths[i] = (int) depth;
+            centerColumns[i] = common.RESOLUTION_X / 2 + (int) (Math.atan2(side, depth) / radsPerColumn);
+            drawOrder[visible++] = ((long) depths[i] << 32) | i;
+        }
+        sort(drawOrder, 0, visible - 1);
+        for (int i = visible - 1; i >= 0; i--) {
+            int entityIndex = (int) drawOrder[i];
+            drawSprite(common, entities.get(entityIndex), spriteSize, depths[entityIndex],
+                    centerColumns[entityIndex]);
+        }
+    }
+
+    private void drawSprite(RendererCommon common, Entity entity, int spriteSize, int depth, int centerColumn) {
+        int width = common.RESOLUTION_X;
+        int height = common.RESOLUTION_Y;
+        int textureSize = RendererCommon.TEXTURE_SIZE;
+        int size = (int) ((long) spriteSize * common.distanceToProjectionPlane / depth);
+        if (size <= 0) {
+            return;
+        }
+        // The sprite stands on the floor, where the bottom of a wall at the same depth would be.
+        int wallHeight = (int) ((long) World.GRID_SIZE * common.distanceToProjectionPlane / depth);
+        int bottom = (height + wallHeight) / 2 - common.wallDrawShift;
+        int top = bottom - size;
+        int left = centerColumn - size / 2;
+        int firstColumn = Math.max(left, 0);
+        int endColumn = Math.min(left + size, width);
+        int drawStart = Math.max(top, 0);
+        int drawEnd = Math.min(bottom, height);
+        if (firstColumn >= endColumn || drawStart >= drawEnd) {
+            return;
+        }
+        int[] pixels = common.pixels;
+        int[] texels = common.spriteTexels[entity.type.ordinal()];
+        ShadeTable shadeTable = common.shadeTable;
+        int shadeLevel = shadeTable.getLevel(depth);
+        // Walk the texture in 16.16 fixed point.
+        int texelStep = (textureSize << 16) / size;
+        int texelRowStart = (drawStart - top) * texelStep;
+        for (int column = firstColumn; column < endColumn; column++) {
+            if (common.distancesToWalls[column] <= depth) { // Behind the wall.
+                continue;
+            }
+            int texelColumn = Math.min(((column - left) * texelStep) >> 16, textureSize - 1) * textureSize;
+            int texelRow = texelRowStart;
+            int pixel = drawStart * width + column;
+            for (int y = drawStart; y < drawEnd; y++) {
+                int texel = texels[texelColumn + Math.min(texelRow >> 16, textureSize - 1)];
+                if ((texel >>> 24) != 0) {
+                    pixels[pixel] = 0xFF000000 | shadeTable.shade(texel, shadeLevel);
+                }
+                texelRow += texelStep;
+                pixel += width;
+            }
+        }
+    }
+
+    /**
+     * Sorts the keys in place to ascending order with quicksort, finishing small ranges with
+     * insertion sort. Unlike Arrays.sort this is guaranteed not to allocate.
+     */
+    private static void sort(long[] keys, int low, int high) {
+        while (high - low > INSERTION_SORT_LIMIT) {
+            // Median of three as the pivot.
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < keys[low]) {
+                swap(keys, middle, low);
+            }
+            if (keys[high] < keys[low]) {
+                swap(keys, high, low);
+            }
+            if (keys[high] < keys[middle]) {
+                swap(keys, high, middle);
+            }
+            long pivot = keys[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, i++, j--);
+                }
+            }
+            // Recurse into the smaller part to keep the stack shallow.
+            if (j - low < high - i) {
+                sort(keys, low, j);
+                low = i;
+            } else {
+                sort(keys, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            keys[j + 1] = key;
+        }
+    }
+
+    private static void swap(long[] keys, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+}
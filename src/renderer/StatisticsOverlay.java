@@ -0,0 +1,47 @@
+package renderer;
+
+import profiler.FrameProfiler;
+
+import java.awt.*;
+
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+/**
+ * Draws the FPS counter and the FrameProfiler's report over the rendered image.
+ */
+class StatisticsOverlay {
+    private final Font font;
+    private long lastDrawNS;
+
+    StatisticsOverlay() {
+        font = new Font("Dialog", Font.PLAIN, 12);
+        lastDrawNS = System.nanoTime();
+    }
+
+    /**
+     * Draws the statistics. Should be called once per frame to keep the FPS correct.
+     * @param g2d where to draw.
+     * @param showFPS draw the FPS counter.
+     * @param showProfile draw the timings of the engine's stages.
+     */
+    void draw(Graphics2D g2d, boolean showFPS, boolean showProfile) {
+        long currentNS = System.nanoTime();
+        int fps = (int) (1000000000L / Math.max(currentNS - lastDrawNS, 1));
+        lastDrawNS = currentNS;
+        g2d.setColor(Color.red);
+        g2d.setFont(font);
+        if (showFPS) {
+            g2d.drawString("FPS: " + fps, 5, 15);
+        }
+        if (showProfile) {
+            int lineY = 30;
+            for (String line : FrameProfiler.getInstance().getReport()) {
+                g2d.drawString(line, 5, lineY);
+                lineY += 15;
+            }
+        }
+    }
+}
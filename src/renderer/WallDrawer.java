@@ -10,16 +10,6 @@ package renderer;
  */
 public class WallDrawer implements RendererComponent {
 
-    private final RendererView parent;
-
-    /**
-     * Constructor.
-     * @param parent the RendererView containing this WallDrawer.
-     */
-    public WallDrawer(RendererView parent) {
-        this.parent = parent;
-    }
-
     public void update(RendererCommon common) {
         int i = 0;
         for (int wallHeight: common.wallHeights) {
@@ -29,7 +19,7 @@ public class WallDrawer implements RendererComponent {
                     (common.RESOLUTION_Y - wallHeight) / 2 - common.wallDrawShift,
                     1,
                     wallHeight,
-                    parent);
+                    null);
         }
 
     }
@@ -13,7 +13,7 @@ import java.awt.image.BufferedImage;
  * Creates the vertical strips of walls of the correct height and position in the
  * texture.
  */
-public class WallStripCreator implements RendererComponent {
+public class WallStripCreator implements ColumnRendererComponent {
 
     private final int textureWidth;
     private final BufferedImage[][] textureStripsArray;
@@ -35,8 +35,12 @@ public class WallStripCreator implements RendererComponent {
     }
 
     public void update(RendererCommon common) {
-        int i = 0;
-        for (int gridIndex : common.gridIndexes) {
+        update(common, 0, common.RESOLUTION_X);
+    }
+
+    public void update(RendererCommon common, int firstColumn, int endColumn) {
+        for (int i = firstColumn; i < endColumn; i++) {
+            int gridIndex = common.gridIndexes[i];
             int textureIndex = common.textureIndexes[i];
             if (textureStripsArray.length <= textureIndex) { // Unsupported texture.
                 textureIndex = 1;
@@ -44,7 +48,6 @@ public class WallStripCreator implements RendererComponent {
             BufferedImage textureStrips[] = textureStripsArray[textureIndex];
             int gridIndexOnTextureStrip = gridIndex * textureWidth / World.GRID_SIZE;
             common.stripsG2D[i].drawImage(textureStrips[gridIndexOnTextureStrip], null, 0, 0);
-            i++;
         }
     }
 }
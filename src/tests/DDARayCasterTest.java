@@ -0,0 +1,78 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import environment.World;
+import exceptions.ViewerNotFoundException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import renderer.DDARayCaster;
+import renderer.RendererCommon;
+
+public class DDARayCasterTest {
+
+    private RendererCommon common;
+
+    @Before
+    public void init() {
+        // One ray straight ahead.
+        common = new RendererCommon();
+        common.FOV = 60;
+        common.RESOLUTION_X = 1;
+        common.RESOLUTION_Y = 100;
+        common.distanceToProjectionPlane = 100;
+        common.rayLengths = new double[1];
+        common.distancesToWalls = new int[1];
+        common.wallHeights = new int[1];
+        common.gridIndexes = new int[1];
+        common.textureIndexes = new int[1];
+        common.wallFaces = new int[1];
+        common.createColumnTables();
+    }
+
+    @Test
+    public void testHitPoint() throws ViewerNotFoundException {
+        common.world = new World(new char[][] {
+                "11111".toCharArray(),
+                "10003".toCharArray(),
+                "11111".toCharArray()});
+        int gridSize = World.GRID_SIZE;
+        // Facing east from the middle of square (1, 1).
+        common.setViewer(gridSize + gridSize / 2, gridSize + gridSize / 2, 0, gridSize / 2);
+        new DDARayCaster().update(common);
+        Assert.assertEquals("Wrong distance.", 2 * gridSize + gridSize / 2, common.distancesToWalls[0]);
+        Assert.assertEquals("Wrong face.", RendererCommon.VERTICAL_WALL, common.wallFaces[0]);
+        Assert.assertEquals("Wrong texture.", 3, common.textureIndexes[0]);
+        Assert.assertEquals("Wrong place on the wall.", gridSize / 2, common.gridIndexes[0]);
+    }
+
+    @Test
+    public void testRayDoesNotPassCorners() throws ViewerNotFoundException {
+        common.world = new World(new char[][] {
+                "1111".toCharArray(),
+                "1021".toCharArray(),
+                "1001".toCharArray(),
+                "1111".toCharArray()});
+        int gridSize = World.GRID_SIZE;
+        // Facing north-east from the middle of square (1, 2), straight at the corner of wall (2, 1).
+        common.setViewer(gridSize + gridSize / 2, 2 * gridSize + gridSize / 2, -Math.PI / 4, gridSize / 2);
+        new DDARayCaster().update(common);
+        int cornerDistance = (int) (Math.sqrt(2) * gridSize / 2);
+        Assert.assertEquals("Ray went through the corner.", cornerDistance, common.distancesToWalls[0], 2);
+        Assert.assertEquals("Wrong texture.", 2, common.textureIndexes[0]);
+    }
+
+    @Test
+    public void testOutsideLevel() throws ViewerNotFoundException {
+        // No outer walls.
+        common.world = new World(new char[][] {"000".toCharArray()});
+        int gridSize = World.GRID_SIZE;
+        common.setViewer(gridSize / 2, gridSize / 2, Math.PI, gridSize / 2);
+        new DDARayCaster().update(common);
+        Assert.assertEquals("Wrong distance.", gridSize / 2, common.distancesToWalls[0]);
+        Assert.assertEquals("Outside of the level should be wall1.", 1, common.textureIndexes[0]);
+    }
+}
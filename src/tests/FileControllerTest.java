@@ -4,11 +4,16 @@ package tests;
  * See COPYING for information on licensing.
  */
 
+import controllers.BinaryLevelFile;
 import controllers.FileController;
+import environment.World;
 import exceptions.CorruptLevelFileException;
+import exceptions.ViewerNotFoundException;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.StringReader;
 
 public class FileControllerTest {
@@ -51,4 +56,33 @@ public class FileControllerTest {
         Assert.assertArrayEquals(levelMatrix[1], new char[] {'1', 'v', '1'});
         Assert.assertArrayEquals(levelMatrix[2], new char[] {'1', '1', '1'});
     }
+
+    @Test
+    public void testBinaryLevelFile() throws CorruptLevelFileException, ViewerNotFoundException, IOException {
+        // Mostly empty is saved as runs, the others packed and unpacked.
+        String[] levels = {
+                "40 3\n" +
+                "1111111111111111111111111111111111111111\n" +
+                "1v000000000000000000000000000000000000n1\n" +
+                "1111111111111111111111111111111111111111",
+                "5 3\n" +
+                "12345\n" +
+                "6v7s8\n" +
+                "99999",
+                "9 2\n" +
+                "123456789\n" +
+                "!#$%&v()*"};
+        File file = File.createTempFile("level", ".rcl");
+        file.deleteOnExit();
+        for (String level : levels) {
+            char[][] levelMatrix = FileController.loadWorld(new StringReader(level));
+            BinaryLevelFile.save(new World(levelMatrix), file);
+            Assert.assertTrue(BinaryLevelFile.isBinary(file));
+            char[][] loaded = BinaryLevelFile.load(file).getLevelMatrix();
+            Assert.assertEquals(levelMatrix.length, loaded.length);
+            for (int y = 0; y < levelMatrix.length; y++) {
+                Assert.assertArrayEquals(levelMatrix[y], loaded[y]);
+            }
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+import racaengine.GameLoop;
+
+public class GameLoopTest {
+
+    @Test(timeout = 5000)
+    public void testStopBeforeRun() {
+        GameLoop gameLoop = new GameLoop(new CountingListener());
+        gameLoop.start();
+        gameLoop.stop(); // As if the window was closed before the thread got to run.
+        gameLoop.run();
+        Assert.assertFalse(gameLoop.isRunning());
+    }
+
+    @Test(timeout = 5000)
+    public void testStop() throws InterruptedException {
+        CountingListener listener = new CountingListener();
+        final GameLoop gameLoop = new GameLoop(listener);
+        gameLoop.setRates(1, 1000);
+        gameLoop.start();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                gameLoop.run();
+            }
+        });
+        thread.start();
+        while (listener.ticks < 3) {
+            Thread.sleep(1);
+        }
+        gameLoop.stop();
+        thread.join();
+        Assert.assertFalse(gameLoop.isRunning());
+    }
+
+    private static class CountingListener implements GameLoop.Listener {
+        volatile int ticks;
+
+        public void tick() {
+            ticks++;
+        }
+
+        public void frame(double interpolation) {
+        }
+    }
+}
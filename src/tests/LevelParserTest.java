@@ -0,0 +1,91 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import controllers.LevelParser;
+import exceptions.CorruptLevelFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LevelParserTest {
+
+    @Test
+    public void testErrorPositions() {
+        assertError("3 3\n111\n1v\n111", 3, 3);
+        assertError("3 3\n111\n1v11\n111", 3, 4);
+        assertError("3 3\n111\n1\tv\n111", 3, 2);
+        assertError("3 3\n111\n1v1\r111", 3, 4);
+        assertError("3 x\n111\n1v1\n111", 1, 3);
+        assertError("3 4\n111\n1v1\n111", 4, 4);
+        assertError("3 3\n111\n1v1\n111\nabc", 5, 1);
+    }
+
+    @Test
+    public void testLineSeparators() throws CorruptLevelFileException {
+        String[] levels = {"3 2\n111\n1v1", "3 2\r\n111\r\n1v1\r\n", "3 2\n111\r\n1v1\n\n"};
+        for (String level : levels) {
+            LevelParser parser = LevelParser.parse(new StringReader(level));
+            Assert.assertEquals(3, parser.getWidth());
+            Assert.assertEquals(2, parser.getHeight());
+            Assert.assertEquals("1111v1", new String(parser.getCells(), 0, 6));
+        }
+    }
+
+    @Test
+    public void testParallel() throws CorruptLevelFileException, IOException {
+        // Large enough to be split into many bands.
+        int width = 200;
+        int height = 12000;
+        Random random = new Random(1);
+        byte[] level = new byte[width * height];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = (byte) ('0' + random.nextInt(4));
+        }
+        File file = File.createTempFile("level", ".lvl");
+        file.deleteOnExit();
+        write(file, width, height, level, "\r\n");
+        LevelParser sequential = LevelParser.parse(file, false);
+        LevelParser parallel = LevelParser.parse(file, true);
+        Assert.assertTrue(Arrays.equals(level, sequential.getCells()));
+        Assert.assertTrue(Arrays.equals(level, parallel.getCells()));
+
+        level[7000 * width + 50] = '\n';
+        write(file, width, height, level, "\n");
+        try {
+            LevelParser.validate(file, true);
+            Assert.fail("A row with a line feed in the middle was accepted.");
+        } catch (CorruptLevelFileException e) {
+            Assert.assertEquals(7002, e.getLine());
+            Assert.assertEquals(51, e.getColumn());
+        }
+    }
+
+    private static void assertError(String level, int line, int column) {
+        try {
+            LevelParser.parse(new StringReader(level));
+            Assert.fail("Corrupt level was accepted: " + level);
+        } catch (CorruptLevelFileException e) {
+            Assert.assertEquals(e.getMessage(), line, e.getLine());
+            Assert.assertEquals(e.getMessage(), column, e.getColumn());
+        }
+    }
+
+    private static void write(File file, int width, int height, byte[] level, String separator) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write((width + " " + height + separator).getBytes("US-ASCII"));
+        for (int y = 0; y < height; y++) {
+            out.write(level, y * width, width);
+            out.write(separator.getBytes("US-ASCII"));
+        }
+        out.close();
+    }
+}
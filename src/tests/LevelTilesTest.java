@@ -0,0 +1,122 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import environment.LevelTiles;
+import exceptions.CorruptLevelFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LevelTilesTest {
+    // 4 tiles across and 3 down, the last ones partly outside the level.
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE = LevelTiles.TILE_SIZE;
+
+    @Test
+    public void testCells() throws CorruptLevelFileException, IOException {
+        byte[] level = createLevel(1);
+        for (String separator : new String[] {"\n", "\r\n"}) {
+            File file = write(level, separator);
+            LevelTiles tiles = new LevelTiles(file, 2);
+            Assert.assertEquals(WIDTH, tiles.getWidth());
+            Assert.assertEquals(HEIGHT, tiles.getHeight());
+            assertCells(level, tiles);
+            Assert.assertEquals(2, tiles.getLoadedTiles());
+            tiles.close();
+        }
+    }
+
+    @Test
+    public void testClockEviction() throws CorruptLevelFileException, IOException {
+        byte[] level = createLevel(2);
+        File file = write(level, "\n");
+        LevelTiles tiles = new LevelTiles(file, 2);
+        tiles.charAt(0, 0);
+        tiles.charAt(TILE, 0);
+        // Both tiles are used, so the hand clears them and drops the first.
+        tiles.charAt(2 * TILE, 0);
+        // The second tile hasn't been used since the hand passed it, the third is dropped next.
+        tiles.charAt(3 * TILE, 0);
+        Assert.assertEquals(2, tiles.getLoadedTiles());
+        // A tile still in memory isn't read again, so only the dropped tiles see the new file.
+        byte[] newLevel = new byte[level.length];
+        Arrays.fill(newLevel, (byte) '2');
+        write(file, newLevel, "\n");
+        Assert.assertEquals((char) level[2 * TILE], tiles.charAt(2 * TILE, 0));
+        Assert.assertEquals('2', tiles.charAt(TILE, 0));
+        tiles.close();
+    }
+
+    @Test
+    public void testChangedTilesKept() throws CorruptLevelFileException, IOException {
+        byte[] level = createLevel(3);
+        File file = write(level, "\r\n");
+        LevelTiles tiles = new LevelTiles(file, 2);
+        tiles.set(1, 1, 'x');
+        level[WIDTH + 1] = 'x';
+        assertCells(level, tiles); // Passes over every tile.
+        Assert.assertEquals(2, tiles.getLoadedTiles());
+
+        // With every tile changed the cache grows.
+        tiles.set(TILE + 1, 1, 'y');
+        level[WIDTH + TILE + 1] = 'y';
+        tiles.set(2 * TILE + 1, 1, 'z');
+        level[WIDTH + 2 * TILE + 1] = 'z';
+        Assert.assertEquals(3, tiles.getLoadedTiles());
+        assertCells(level, tiles);
+        Assert.assertEquals(4, tiles.getLoadedTiles());
+
+        // The copy has the changes, but its changes aren't in the original.
+        LevelTiles copy = tiles.copy();
+        assertCells(level, copy);
+        copy.set(1, 1, '0');
+        Assert.assertEquals('x', tiles.charAt(1, 1));
+        tiles.close();
+        copy.close();
+    }
+
+    private static byte[] createLevel(long seed) {
+        Random random = new Random(seed);
+        byte[] level = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = (byte) ('0' + random.nextInt(4));
+        }
+        return level;
+    }
+
+    private static void assertCells(byte[] level, LevelTiles tiles) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                char c = (char) level[y * WIDTH + x];
+                Assert.assertEquals("Wrong cell at (" + x + ", " + y + ").", c, tiles.charAt(x, y));
+                Assert.assertEquals(c != '0' && !Character.isLetter(c), tiles.wallAt(x, y));
+            }
+        }
+    }
+
+    private static File write(byte[] level, String separator) throws IOException {
+        File file = File.createTempFile("level", ".lvl");
+        file.deleteOnExit();
+        write(file, level, separator);
+        return file;
+    }
+
+    private static void write(File file, byte[] level, String separator) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write((WIDTH + " " + HEIGHT + separator).getBytes("US-ASCII"));
+        for (int y = 0; y < HEIGHT; y++) {
+            out.write(level, y * WIDTH, WIDTH);
+            out.write(separator.getBytes("US-ASCII"));
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,135 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import controllers.FileController;
+import environment.PotentiallyVisibleSet;
+import environment.World;
+import exceptions.CorruptLevelFileException;
+import exceptions.ViewerNotFoundException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+public class PotentiallyVisibleSetTest {
+
+    @Test
+    public void testRooms() throws CorruptLevelFileException, ViewerNotFoundException {
+        World world = new World(FileController.loadWorld(new StringReader(
+                "12 7\n" +
+                "111111111111\n" +
+                "1v0001000001\n" +
+                "100001000001\n" +
+                "111101011111\n" +
+                "100000010001\n" +
+                "10000001000n\n" +
+                "111111111111")));
+        PotentiallyVisibleSet visibleSet = PotentiallyVisibleSet.build(world, false);
+        Assert.assertTrue(visibleSet.isVisible(1, 1, 4, 2));
+        Assert.assertTrue(visibleSet.isVisible(1, 1, 4, 4)); // Through the door below.
+        Assert.assertFalse(visibleSet.isVisible(1, 1, 10, 1)); // Behind the wall on the right.
+        Assert.assertFalse(visibleSet.isVisible(1, 1, 9, 5));
+        Assert.assertTrue(world.setPotentiallyVisibleSet(visibleSet));
+        world.setCharAtGridPos(5, 1, '0');
+        Assert.assertNull(world.getPotentiallyVisibleSet());
+        Assert.assertFalse(world.setPotentiallyVisibleSet(visibleSet));
+    }
+
+    @Test
+    public void testSeesEveryLineOfSight() throws ViewerNotFoundException, CorruptLevelFileException, IOException {
+        Random random = new Random(1);
+        int width = 40;
+        int height = 30;
+        char[][] level = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                level[y][x] = (random.nextInt(6) == 0) ? '2' : '0';
+            }
+        }
+        World world = new World(level);
+        PotentiallyVisibleSet visibleSet = PotentiallyVisibleSet.build(world, true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        visibleSet.write(new DataOutputStream(bytes));
+        PotentiallyVisibleSet read = PotentiallyVisibleSet.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertTrue(read.matches(world));
+
+        long[] blocks = null;
+        int hidden = 0;
+        for (int fromY = 0; fromY < height; fromY++) {
+            for (int fromX = 0; fromX < width; fromX++) {
+                if (world.wallAtGridPos(fromX, fromY)) {
+                    continue;
+                }
+                blocks = read.visibleBlocks(fromX, fromY, blocks);
+                for (int toY = 0; toY < height; toY++) {
+                    for (int toX = 0; toX < width; toX++) {
+                        boolean visible = visibleSet.isVisible(fromX, fromY, toX, toY);
+                        Assert.assertEquals(visible, read.contains(blocks, toX, toY));
+                        if (!visible) {
+                            assertHidden(world, fromX, fromY, toX, toY);
+                            hidden++;
+                        }
+                    }
+                }
+            }
+        }
+        Assert.assertTrue("Nothing was culled.", hidden > 0);
+    }
+
+    /**
+     * Checks that no line between the cells misses the walls. The lines are drawn between points
+     * spread over both cells, as entities can be anywhere in a cell, 0.2 cells from the walls.
+     */
+    private static void assertHidden(World world, int fromX, int fromY, int toX, int toY) {
+        double[] offsets = {0.2, 0.5, 0.8};
+        for (double fromOffsetY : offsets) {
+            for (double fromOffsetX : offsets) {
+                for (double toOffsetY : offsets) {
+                    for (double toOffsetX : offsets) {
+                        if (lineOfSight(world, fromX + fromOffsetX, fromY + fromOffsetY, toX + toOffsetX,
+                                toY + toOffsetY)) {
+                            Assert.fail("(" + toX + ", " + toY + ") is seen from (" + (fromX + fromOffsetX)
+                                    + ", " + (fromY + fromOffsetY) + ").");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks the cells the line crosses, like the DDARayCaster.
+     * @return true if the line crosses no wall before the cell of its end.
+     */
+    private static boolean lineOfSight(World world, double fromX, double fromY, double toX, double toY) {
+        int x = (int) fromX;
+        int y = (int) fromY;
+        double lineX = toX - fromX;
+        double lineY = toY - fromY;
+        int stepX = (lineX < 0) ? -1 : 1;
+        int stepY = (lineY < 0) ? -1 : 1;
+        double deltaX = (lineX == 0) ? Double.MAX_VALUE : Math.abs(1 / lineX);
+        double deltaY = (lineY == 0) ? Double.MAX_VALUE : Math.abs(1 / lineY);
+        double nextX = ((lineX < 0) ? fromX - x : x + 1 - fromX) * deltaX;
+        double nextY = ((lineY < 0) ? fromY - y : y + 1 - fromY) * deltaY;
+        // A step in x or y at a time, so the cells before the end are a known number of steps.
+        for (int steps = Math.abs((int) toX - x) + Math.abs((int) toY - y); steps > 1; steps--) {
+            if (nextX < nextY) {
+                x += stepX;
+                nextX += deltaX;
+            } else {
+                y += stepY;
+                nextY += deltaY;
+            }
+            if (world.wallAtGridPos(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import environment.World;
+import exceptions.ViewerNotFoundException;
+import org.junit.Assert;
+import org.junit.Test;
+import renderer.DDARayCaster;
+import renderer.RayCache;
+import renderer.RendererCommon;
+
+import java.util.Random;
+
+public class RayCacheTest {
+    private static final int WIDTH = 200;
+
+    @Test
+    public void testTurnedFrameMatchesCastFrame() throws ViewerNotFoundException {
+        Random random = new Random(1);
+        char[][] level = new char[40][40];
+        for (int y = 0; y < level.length; y++) {
+            for (int x = 0; x < level[y].length; x++) {
+                level[y][x] = (random.nextInt(8) == 0) ? '2' : '0';
+            }
+        }
+        level[20][20] = '0';
+        World world = new World(level);
+        int x = 20 * World.GRID_SIZE + World.GRID_SIZE / 3;
+        int y = 20 * World.GRID_SIZE + World.GRID_SIZE / 2;
+        double radsPerColumn = Math.toRadians(60) / WIDTH;
+
+        RendererCommon common = createCommon(world);
+        RayCache rayCache = new RayCache(new DDARayCaster());
+        // The first frame is cast in full and not snapped.
+        common.setViewer(x, y, 0.123, World.GRID_SIZE / 2);
+        rayCache.update(common);
+        rayCache.getCaster().update(common);
+        Assert.assertEquals(0.123, common.viewerDirection, 0);
+
+        // Turned by 17.4 columns, 17 of the columns are reused.
+        double turned = 0.123 + 17.4 * radsPerColumn;
+        common.setViewer(x, y, turned, World.GRID_SIZE / 2);
+        rayCache.update(common);
+        rayCache.getCaster().update(common);
+        Assert.assertEquals("Snapped more than half a column.", turned, common.viewerDirection,
+                radsPerColumn / 2);
+
+        // The same as a frame cast in full in the snapped direction.
+        RendererCommon snapped = createCommon(world);
+        snapped.setViewer(x, y, common.viewerDirection, World.GRID_SIZE / 2);
+        new DDARayCaster().update(snapped);
+        Assert.assertArrayEquals(snapped.distancesToWalls, common.distancesToWalls);
+
+        // Against a frame cast in full in the exact direction, the distances are within 2% except
+        // at the edges of the walls, where a ray turned by half a column may hit another wall.
+        RendererCommon cast = createCommon(world);
+        cast.setViewer(x, y, turned, World.GRID_SIZE / 2);
+        new DDARayCaster().update(cast);
+        int edges = 0;
+        for (int i = 0; i < WIDTH; i++) {
+            if (Math.abs(common.distancesToWalls[i] - cast.distancesToWalls[i]) > 0.02 * cast.distancesToWalls[i]) {
+                edges++;
+            }
+        }
+        Assert.assertTrue(edges + " columns differ.", edges <= WIDTH / 20);
+    }
+
+    private static RendererCommon createCommon(World world) {
+        RendererCommon common = new RendererCommon();
+        common.FOV = 60;
+        common.RESOLUTION_X = WIDTH;
+        common.RESOLUTION_Y = 100;
+        common.distanceToProjectionPlane = 100;
+        common.rayLengths = new double[WIDTH];
+        common.distancesToWalls = new int[WIDTH];
+        common.wallHeights = new int[WIDTH];
+        common.gridIndexes = new int[WIDTH];
+        common.textureIndexes = new int[WIDTH];
+        common.wallFaces = new int[WIDTH];
+        common.createColumnTables();
+        common.world = world;
+        return common;
+    }
+}
@@ -0,0 +1,120 @@
+package tests;
+/*
+ * © Copyright 2010 Martin Yrjölä. All Rights Reserved.
+ * See COPYING for information on licensing.
+ */
+
+import environment.World;
+import environment.WorldChangeListener;
+import exceptions.CorruptLevelFileException;
+import exceptions.ViewerNotFoundException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class WorldTest {
+
+    @Test
+    public void testWallDistances() throws ViewerNotFoundException {
+        Random random = new Random(1);
+        int width = 90;
+        int height = 70;
+        char[][] level = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                level[y][x] = (random.nextInt(100) == 0) ? '2' : '0';
+            }
+        }
+        World world = new World(level);
+        assertWallDistances(world);
+        // Walls added and removed, the distances are only computed again around them.
+        for (int i = 0; i < 200; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            world.setCharAtGridPos(x, y, world.wallAtGridPos(x, y) ? '0' : '1');
+        }
+        assertWallDistances(world);
+    }
+
+    @Test
+    public void testJournal() throws ViewerNotFoundException, CorruptLevelFileException {
+        Random random = new Random(2);
+        char[] chars = {'0', '1', '2', 'n', 's'};
+        char[][] level = new char[40][50];
+        for (char[] row : level) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = chars[random.nextInt(chars.length)];
+            }
+        }
+        World world = new World(level);
+        World copy = world.copy();
+        final int[] told = new int[1];
+        world.addChangeListener(new WorldChangeListener() {
+            public void cellChanged(int x, int y, char c) {
+                told[0]++;
+            }
+        });
+        int version = world.getVersion();
+        edit(world, random, chars, 500);
+        Assert.assertEquals(world.getVersion() - version, told[0]);
+        Assert.assertEquals(told[0], world.getChangesSince(version).size());
+        int copyVersion = copy.getVersion();
+        edit(copy, random, chars, 300);
+        Assert.assertTrue(copy.revertChangesSince(copyVersion));
+        copy.applyChanges(world.getChangesSince(version));
+        assertSameLevel(world, copy);
+
+        // Only the cells of the entities are looked at.
+        int[] positions = world.getEntityPositions();
+        int entity = 0;
+        for (int y = 0; y < world.getHeight(); y++) {
+            for (int x = 0; x < world.getWidth(); x++) {
+                if (Character.isLetter(world.charAtGridPos(x, y))) {
+                    Assert.assertEquals(x, positions[entity++]);
+                    Assert.assertEquals(y, positions[entity++]);
+                }
+            }
+        }
+        Assert.assertEquals(positions.length, entity);
+
+        version = world.getVersion();
+        edit(world, random, chars, World.MAX_JOURNAL);
+        Assert.assertNull(world.getChangesSince(version));
+        Assert.assertFalse(world.revertChangesSince(version));
+    }
+
+    private static void edit(World world, Random random, char[] chars, int edits) {
+        for (int i = 0; i < edits; i++) {
+            char c = world.charAtGridPos(0, 0) == '0' ? '1' : '0'; // At least this changes.
+            world.setCharAtGridPos(0, 0, c);
+            world.setCharAtGridPos(random.nextInt(world.getWidth()), random.nextInt(world.getHeight()),
+                    chars[random.nextInt(chars.length)]);
+        }
+    }
+
+    private static void assertSameLevel(World expected, World actual) {
+        char[][] expectedLevel = expected.getLevelMatrix();
+        char[][] actualLevel = actual.getLevelMatrix();
+        for (int y = 0; y < expectedLevel.length; y++) {
+            Assert.assertArrayEquals(expectedLevel[y], actualLevel[y]);
+        }
+    }
+
+    private static void assertWallDistances(World world) {
+        for (int y = -1; y <= world.getHeight(); y++) {
+            for (int x = -1; x <= world.getWidth(); x++) {
+                int expected = World.MAX_WALL_DISTANCE;
+                for (int wallY = y - expected; wallY <= y + expected; wallY++) {
+                    for (int wallX = x - expected; wallX <= x + expected; wallX++) {
+                        if (world.wallAtGridPos(wallX, wallY)) {
+                            expected = Math.min(expected, Math.max(Math.abs(wallX - x), Math.abs(wallY - y)));
+                        }
+                    }
+                }
+                Assert.assertEquals("Wrong distance at (" + x + ", " + y + ").", expected,
+                        world.wallDistanceAtGridPos(x, y));
+            }
+        }
+    }
+}